@@ -0,0 +1,17 @@
+package abstractions;
+
+import java.util.function.Consumer;
+
+/**
+ * A solver that can find all solutions of a puzzle, not just the first one.
+ */
+public interface IEnumeratingSolver {
+    /**
+     * Searches for all solutions instead of stopping at the first one, handing each of them to the consumer as soon as it is found.
+     * Returns the number of solutions, which may be 0. Solutions that only differ by equal cubes being swapped count once.
+     * Sets up the solver on its own, and each call runs a new search. Concurrent solvers may call the consumer from several
+     * threads at the same time.
+     * @throws InterruptedException If the calling thread got interrupted, which stops the search
+     */
+    long enumerate(Consumer<IPuzzleSolution> consumer) throws InterruptedException;
+}
@@ -1,5 +1,7 @@
 package abstractions;
 
+import implementation.cube.PackedTriangles;
+
 import java.util.Arrays;
 import java.util.stream.Stream;
 
@@ -93,10 +95,25 @@ public enum Orientation{
      * Returns the orientation for the given ordinal.
      */
     public static Orientation get(int ordinal) {
-        assert ordinal > 0 && ordinal < 24;
+        assert ordinal >= 0 && ordinal < 24;
 
         return values[ordinal];
     }
 
-    //TODO: Implement rotation
+    /**
+     * Rotates the given packed triangles (see {@link PackedTriangles}) by this orientation, the same way a cube in {@link #Alpha}
+     * ends up in this orientation. Applied to a cube in any orientation, this yields the cube rotated by this orientation as a whole.
+     */
+    public int rotate(int packedTriangles) {
+        int rotated = 0;
+        for (int j = 0; j < 6; j++) {
+            int triangle = PackedTriangles.get(packedTriangles, j);
+            if(triangle != 0) { // Only write if there is a triangle
+                triangle += this.triangleOffset[j];
+                if (triangle > 4) triangle -= 4;
+                rotated = PackedTriangles.with(rotated, this.side[j], triangle);
+            }
+        }
+        return rotated;
+    }
 }
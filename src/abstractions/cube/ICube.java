@@ -1,6 +1,7 @@
 package abstractions.cube;
 
 import abstractions.Orientation;
+import implementation.cube.PackedTriangles;
 
 import java.util.ArrayList;
 
@@ -19,6 +20,11 @@ public interface ICube extends Cloneable {
      */
     void setOrientation(Orientation orientation);
 
+    /**
+     * Returns the current orientation of this cube
+     */
+    Orientation getOrientation();
+
     /**
      * Returns the triangle at the given side in its current orientation
      */
@@ -76,6 +82,20 @@ public interface ICube extends Cloneable {
 
     byte[] getTriangles(int o);
 
+    /**
+     * Returns the triangles of this cube in its current orientation, packed into a single int (see {@link implementation.cube.PackedTriangles}).
+     */
+    default int getPackedTriangles() {
+        return PackedTriangles.pack(this.getTriangles());
+    }
+
+    /**
+     * Returns the triangles of this cube in the given orientation, packed into a single int (see {@link implementation.cube.PackedTriangles}).
+     */
+    default int getPackedTriangles(int o) {
+        return PackedTriangles.pack(this.getTriangles(o));
+    }
+
     /**
      * Serializes the cube with its current orientation.
      */
@@ -1,20 +1,21 @@
 package abstractions.cube;
 
 import abstractions.Orientation;
+import implementation.cube.PackedTriangles;
 
 public interface ICubeFilter extends Cloneable {
     /**
      * Checks if the given cube matches this filter in its current orientation
      */
     default boolean match(ICube cube){
-        return this.match(cube.getTriangles());
+        return this.match(cube.getPackedTriangles());
     }
 
     /**
      * Checks if the given cube matches this filter in the given orientation
      */
     default boolean match(ICube cube, Orientation o) {
-        return this.match(cube.getTriangles(o));
+        return this.match(cube.getPackedTriangles(o.ordinal()));
     }
 
     /**
@@ -37,6 +38,13 @@ public interface ICubeFilter extends Cloneable {
      */
     boolean match(byte... triangles);
 
+    /**
+     * Checks if the given packed triangles (see {@link PackedTriangles}) match this filter
+     */
+    default boolean match(int packedTriangles) {
+        return this.match(PackedTriangles.unpack(packedTriangles));
+    }
+
     /**
      * Modifies this side of the filter
      */
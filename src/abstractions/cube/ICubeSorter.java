@@ -1,5 +1,8 @@
 package abstractions.cube;
 
+import implementation.cube.CubeMask;
+
+import java.util.Arrays;
 import java.util.function.Predicate;
 
 /**
@@ -17,6 +20,14 @@ public interface ICubeSorter {
      */
     int count(ICubeFilter matcher, Predicate<Integer> filter);
 
+    /**
+     * Retrieves the number of cubes (in all their possible orientations) that match the given filter and who's ID is not set in the given mask.
+     * See {@link CubeMask} for the layout of the mask.
+     */
+    default int count(ICubeFilter matcher, long[] usedMask) {
+        return count(matcher, id -> !CubeMask.isSet(usedMask, id));
+    }
+
     /**
      * Retrieves the number of cubes (in all their possible orientations) that match the given filter.
      */
@@ -24,12 +35,49 @@ public interface ICubeSorter {
         return count(matcher, integer -> true);
     }
 
+    /**
+     * Returns the ids of all cubes that match the given filter in at least one orientation, as mask (see {@link CubeMask}).
+     * The returned mask may be shared, DO NOT MODIFY IT.
+     */
+    default long[] candidates(ICubeFilter matcher) {
+        ICube[] cubes = matching(matcher);
+        long[] mask = CubeMask.create(Arrays.stream(cubes).mapToInt(ICube::getIdentifier).max().orElse(0));
+        for (ICube cube : cubes) {
+            CubeMask.set(mask, cube.getIdentifier());
+        }
+        return mask;
+    }
+
+    /**
+     * Retrieves the number of cubes (not orientations) that match the given filter in at least one orientation and who's ID is not set in the given mask.
+     * Meant to be cheap enough to be called for every neighbor after each placement, e.g. for lookahead or fail-first checks.
+     */
+    default int countCubes(ICubeFilter matcher, long[] usedMask) {
+        return CubeMask.countFree(candidates(matcher), usedMask);
+    }
+
+    /**
+     * Returns whether any cube that matches the given filter in at least one orientation is not set in the given mask.
+     * Same as countCubes(matcher, usedMask) > 0, but stops at the first one.
+     */
+    default boolean hasCubes(ICubeFilter matcher, long[] usedMask) {
+        return CubeMask.anyFree(candidates(matcher), usedMask);
+    }
+
     /**
      * Retrieves all cubes (in all their possible orientations) that match the given filter and who's ID satisfies the predicate
      * The resulting array might be empty.
      */
     ICube[] matching(ICubeFilter matcher, Predicate<Integer> filter);
 
+    /**
+     * Retrieves all cubes (in all their possible orientations) that match the given filter and who's ID is not set in the given mask.
+     * See {@link CubeMask} for the layout of the mask. The resulting array might be empty.
+     */
+    default ICube[] matching(ICubeFilter matcher, long[] usedMask) {
+        return matching(matcher, id -> !CubeMask.isSet(usedMask, id));
+    }
+
     /**
      * Retrieves all cubes (in all their possible orientations) that match the given filter.
      * The resulting array might be empty.
@@ -38,6 +86,28 @@ public interface ICubeSorter {
         return matching(matcher, integer -> true);
     }
 
+    /**
+     * Writes all cubes (in all their possible orientations) that match the given filter and who's ID is not set in the given mask
+     * into "dest", starting at index 0, and returns their number. Nothing is allocated, so "dest" may be reused between calls.
+     * If "dest" is too small only the first dest.length cubes are written, but the full number is returned anyway,
+     * so the caller can grow its buffer and try again.
+     */
+    default int matchingInto(ICubeFilter matcher, long[] usedMask, ICube[] dest) {
+        ICube[] result = matching(matcher, usedMask);
+        System.arraycopy(result, 0, dest, 0, Math.min(result.length, dest.length));
+        return result.length;
+    }
+
+    /**
+     * Returns all orientations of any one cube that the given filter matches
+     */
+    default ICube[] matchingAny(ICubeFilter filter) {
+        ICube[] cubes = matching(filter);
+        if(cubes.length == 0) return cubes;
+        int id = cubes[0].getIdentifier();
+        return Arrays.stream(cubes).filter(cube -> cube.getIdentifier() == id).toArray(ICube[]::new);
+    }
+
     /**
      * Returns the amount of cubes that match the given filter uniquely
      */
@@ -59,4 +129,12 @@ public interface ICubeSorter {
      * Returns the number of unique cubes this sorter has been initialized with
      */
     int getNumCubes();
+
+    /**
+     * Returns a replica of this sorter for use on another thread. Replicas may share their (thread safe) state with this sorter.
+     * Sorters without any per-thread state may return themselves.
+     */
+    default ICubeSorter cloneSorter() {
+        return this;
+    }
 }
@@ -20,6 +20,10 @@ public class Puzzle implements IPuzzle {
 	/** flag to control if this is run in debug mode. */
 	public static final boolean DEBUG = false;
 	public static final boolean LOG = false;
+	/** flag to control if solvers check the neighbors of each cube they place for remaining candidates, see {@link abstractions.cube.ICubeSorter#hasCubes} */
+	public static final boolean FORWARD_CHECKING = false;
+	/** flag to control if solvers remember partial solutions that have been searched without success, see {@link implementation.solver.DeadStateTable} */
+	public static final boolean DEAD_STATES = false;
 
 	public int dimensionX, dimensionY, dimensionZ;
 	public ICube[] cubes;
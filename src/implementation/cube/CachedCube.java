@@ -8,13 +8,18 @@ import implementation.Puzzle;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Cube implementation that caches all possible rotations.
+ * Each rotation is stored packed into a single int (see {@link PackedTriangles}), and cubes with the same triangles share the same table.
  */
 public class CachedCube implements ICube {
-    /** IMMUTABLE */
-    private final byte[][] data;
+    /** Shared tables of all packed rotations, indexed by the packed triangles in {@link Orientation#Alpha} */
+    private static final ConcurrentHashMap<Integer, int[]> tables = new ConcurrentHashMap<>();
+
+    /** IMMUTABLE, shared with all cubes with the same triangles. Indexed by the ordinal of the orientation */
+    private final int[] data;
     /** Mutable orientation of this particular cube instance */
     private Orientation orientation = Orientation.Alpha;
     /** The unique number of this cube */
@@ -33,33 +38,50 @@ public class CachedCube implements ICube {
     public CachedCube(int identifier, Triangle... triangles) {
         assert triangles.length == 6;
 
-        this.data = new byte[24][6];
         this.identifier = identifier;
 
+        byte[] raw = new byte[6];
+        for (int j = 0; j < 6; j++) {
+            raw[j] = (byte) triangles[j].ordinal();
+        }
+        this.data = tables.computeIfAbsent(PackedTriangles.pack(raw), packed -> rotate(identifier, raw));
+
         int id = Integer.MAX_VALUE;
         for (int i = 0; i < 24; i++) { // For each of the 24 orientations
             int tmpId = 0;
+            for (int j = 0; j < 6; j++) { // Apply the formula for ID calculation: sum(0 ≤ i < 6 ): side[i] * 5^i
+                tmpId += PackedTriangles.get(this.data[i], j) * pow5[j];
+            }
+            if(tmpId < id) id = tmpId;
+        }
+
+        this.uniqueCubeId = id;
+        this.triangles = (int) Arrays.stream(triangles).filter(triangle -> triangle != Triangle.None).count();
+    }
+
+    /**
+     * Calculates the packed triangles of all 24 orientations of the given triangles
+     */
+    private static int[] rotate(int identifier, byte[] triangles) {
+        int[] data = new int[24];
+        for (int i = 0; i < 24; i++) { // For each of the 24 orientations
             Orientation o = Orientation.get(i);
             for (int j = 0; j < 6; j++) { // For each of the 6 sides of the cube
-                if(triangles[j] != Triangle.None) { // Only write if there is a triangle
-                    byte triangle  = (byte) (o.triangleOffset[j] + triangles[j].ordinal()); // Calculate the triangle on this side
+                if(triangles[j] != Triangle.None.ordinal()) { // Only write if there is a triangle
+                    int triangle = o.triangleOffset[j] + triangles[j]; // Calculate the triangle on this side
                     if (triangle > 4) triangle -= 4; // Normalise it
-                    data[i][o.side[j]] = triangle; // Set it
-                    tmpId += triangle * pow5[o.side[j]]; // Apply the formula for ID calculation: sum(0 ≤ i < 6 ): side[i] * 5^i
-                    if(Puzzle.DEBUG && data[i][o.side[j]] == 0) {
-                        data[i][o.side[j]] = 1;
-                        System.out.printf("[%s] Illegal rotation operation (%d, %d)\n", this.identifier, o.triangleOffset[j], triangles[j].ordinal());
+                    if(Puzzle.DEBUG && triangle == 0) {
+                        triangle = 1;
+                        System.out.printf("[%s] Illegal rotation operation (%d, %d)\n", identifier, o.triangleOffset[j], triangles[j]);
                     }
+                    data[i] = PackedTriangles.with(data[i], o.side[j], triangle); // Set it
                 }
             }
-            if(tmpId < id) id = tmpId;
         }
-
-        this.uniqueCubeId = id;
-        this.triangles = (int) Arrays.stream(triangles).filter(triangle -> triangle != Triangle.None).count();
+        return data;
     }
 
-    private CachedCube(byte[][] data, Orientation orientation, int identifier, int triangles, int uniqueCubeId) {
+    private CachedCube(int[] data, Orientation orientation, int identifier, int triangles, int uniqueCubeId) {
         this.data = data;
         this.orientation = orientation;
         this.identifier = identifier;
@@ -87,14 +109,19 @@ public class CachedCube implements ICube {
         this.orientation = orientation;
     }
 
+    @Override
+    public Orientation getOrientation() {
+        return this.orientation;
+    }
+
     @Override
     public Triangle getTriangle(Side side) {
-        return Triangle.valueOf( this.data[this.orientation.ordinal()][side.ordinal()] );
+        return Triangle.valueOf( PackedTriangles.get(this.data[this.orientation.ordinal()], side.ordinal()) );
     }
 
     @Override
     public Triangle getTriangle(Side side, Orientation orientation) {
-        return Triangle.valueOf( this.data[orientation.ordinal()][side.ordinal()] );
+        return Triangle.valueOf( PackedTriangles.get(this.data[orientation.ordinal()], side.ordinal()) );
     }
 
     @Override
@@ -125,16 +152,26 @@ public class CachedCube implements ICube {
 
     @Override
     public byte[] getTriangles() {
-        return this.data[this.orientation.ordinal()];
+        return PackedTriangles.unpack(this.data[this.orientation.ordinal()]);
     }
 
     @Override
     public byte[] getTriangles(Orientation o) {
-        return this.data[o.ordinal()];
+        return PackedTriangles.unpack(this.data[o.ordinal()]);
     }
 
     @Override
     public byte[] getTriangles(int o) {
+        return PackedTriangles.unpack(this.data[o]);
+    }
+
+    @Override
+    public int getPackedTriangles() {
+        return this.data[this.orientation.ordinal()];
+    }
+
+    @Override
+    public int getPackedTriangles(int o) {
         return this.data[o];
     }
 
@@ -145,6 +182,6 @@ public class CachedCube implements ICube {
 
     @Override
     public byte getMatchingTriangle(int side, boolean isVertical) {
-        return Triangle.getMatching(this.data[this.orientation.ordinal()][side], isVertical);
+        return Triangle.getMatching(PackedTriangles.get(this.data[this.orientation.ordinal()], side), isVertical);
     }
 }
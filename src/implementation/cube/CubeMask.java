@@ -0,0 +1,88 @@
+package implementation.cube;
+
+/**
+ * Static helpers for bitmasks over cube identifiers, stored as plain long arrays so that they can be tested and combined
+ * word by word. Bit i of the mask corresponds to the cube with identifier i.
+ */
+public final class CubeMask {
+
+    private CubeMask() {}
+
+    /**
+     * Creates an empty mask able to hold all identifiers from 0 to maxId (inclusive).
+     */
+    public static long[] create(int maxId) {
+        return new long[(maxId >>> 6) + 1];
+    }
+
+    /**
+     * Marks the given identifier.
+     */
+    public static void set(long[] mask, int id) {
+        mask[id >>> 6] |= 1L << id;
+    }
+
+    /**
+     * Removes the given identifier.
+     */
+    public static void clear(long[] mask, int id) {
+        mask[id >>> 6] &= ~(1L << id);
+    }
+
+    /**
+     * Returns whether the given identifier is marked.
+     */
+    public static boolean isSet(long[] mask, int id) {
+        return (mask[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Returns the lowest identifier marked in this mask, or -1 if there is none.
+     */
+    public static int first(long[] mask) {
+        for (int w = 0; w < mask.length; w++) {
+            if(mask[w] != 0) return (w << 6) + Long.numberOfTrailingZeros(mask[w]);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of identifiers marked in "candidates", but not in "usedMask". Words missing in "usedMask" count as empty.
+     */
+    public static int countFree(long[] candidates, long[] usedMask) {
+        int c = 0;
+        int shared = Math.min(candidates.length, usedMask.length);
+        for (int w = 0; w < shared; w++) {
+            c += Long.bitCount(candidates[w] & ~usedMask[w]);
+        }
+        for (int w = shared; w < candidates.length; w++) {
+            c += Long.bitCount(candidates[w]);
+        }
+        return c;
+    }
+
+    /**
+     * Returns whether any identifier is marked in "candidates", but not in "usedMask". Words missing in "usedMask" count as empty.
+     */
+    public static boolean anyFree(long[] candidates, long[] usedMask) {
+        int shared = Math.min(candidates.length, usedMask.length);
+        for (int w = 0; w < shared; w++) {
+            if((candidates[w] & ~usedMask[w]) != 0) return true;
+        }
+        for (int w = shared; w < candidates.length; w++) {
+            if(candidates[w] != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of identifiers marked in this mask.
+     */
+    public static int count(long[] mask) {
+        int c = 0;
+        for (long word : mask) {
+            c += Long.bitCount(word);
+        }
+        return c;
+    }
+}
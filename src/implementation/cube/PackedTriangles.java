@@ -0,0 +1,71 @@
+package implementation.cube;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Static helpers for the packed representation of the six triangles of a cube (or filter) in one int.
+ * Each side takes 3 bits, side i (see {@link abstractions.cube.ICube.Side}) is stored at bits 3*i to 3*i+2, so a packed value
+ * only uses the lowest 18 bits. Two cubes in two orientations have the same triangles iff their packed values are equal.
+ */
+public final class PackedTriangles {
+    /** Number of bits used per side */
+    public static final int BITS = 3;
+    /** Mask for a single side, shift it by {@link #shift(int)} */
+    public static final int SIDE_MASK = 0b111;
+    /** Number of possible packed values */
+    public static final int SIZE = 1 << (6 * BITS);
+
+    /** Flyweight table of the unpacked triangles, filled on demand and shared by everyone. Indexed by the packed value. */
+    private static final AtomicReferenceArray<byte[]> unpacked = new AtomicReferenceArray<>(SIZE);
+
+    private PackedTriangles() {}
+
+    /**
+     * Returns the position of the lowest bit of the given side.
+     */
+    public static int shift(int side) {
+        return side * BITS;
+    }
+
+    /**
+     * Packs the given triangles, in this order: up, left, front, right, back, down
+     */
+    public static int pack(byte... triangles) {
+        int packed = 0;
+        for (int i = 0; i < 6; i++) {
+            packed |= triangles[i] << shift(i);
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the triangle at the given side.
+     */
+    public static byte get(int packed, int side) {
+        return (byte) ((packed >>> shift(side)) & SIDE_MASK);
+    }
+
+    /**
+     * Returns the given packed value, but with the triangle of the given side replaced.
+     */
+    public static int with(int packed, int side, int triangle) {
+        int shift = shift(side);
+        return (packed & ~(SIDE_MASK << shift)) | (triangle << shift);
+    }
+
+    /**
+     * Unpacks the given value. The returned array is shared by everyone, DO NOT MODIFY IT.
+     */
+    public static byte[] unpack(int packed) {
+        byte[] triangles = unpacked.get(packed);
+        if(triangles == null) {
+            triangles = new byte[6];
+            for (int i = 0; i < 6; i++) {
+                triangles[i] = get(packed, i);
+            }
+            // Whoever is first wins, all others use that instance
+            if(!unpacked.compareAndSet(packed, null, triangles)) triangles = unpacked.get(packed);
+        }
+        return triangles;
+    }
+}
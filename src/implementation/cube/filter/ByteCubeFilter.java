@@ -5,12 +5,14 @@ import abstractions.cube.ICube;
 import abstractions.cube.ICubeFilter;
 import abstractions.cube.Triangle;
 import implementation.Puzzle;
+import implementation.cube.PackedTriangles;
 
 import java.util.Arrays;
 
 /**
  * {@link ICubeFilter} implementation that uses byte arrays for all its operations.
- * Use the match(bytes...) function for optimal performance.
+ * Next to the plain sides it keeps a packed form (see {@link PackedTriangles}) that is updated on every change,
+ * so use the match(int) function with packed triangles for optimal performance.
  */
 public class ByteCubeFilter implements ICubeFilter {
 
@@ -21,12 +23,31 @@ public class ByteCubeFilter implements ICubeFilter {
     private static final byte BottomRight = (byte) Triangle.BottomRight.ordinal();
     private static final byte AnyNotNone = (byte) Triangle.AnyNotNone.ordinal();
 
+    /** Added to packed triangles, this sets the highest bit of every side that has a triangle (triangles are at most 4, so nothing carries over) */
+    private static final int NonZeroCarry = 0b011_011_011_011_011_011;
+    /** Highest bit of each side */
+    private static final int NonZeroBit = 0b100;
+    private static final int[] pow6 = {7776, 1296, 216, 36, 6, 1};
+
     private final byte[] sides = new byte[6];
+    /*
+     * Packed form of the sides, always in sync with them. Packed triangles "t" match this filter iff
+     * ((t + NonZeroCarry) & nonZeroMask | t & equalMask) == expected
+     */
+    /** Mask over all sides that need to have exactly the triangle in "expected" */
+    private int equalMask;
+    /** Mask over the highest bit of all sides that need to have any triangle */
+    private int nonZeroMask;
+    /** The value the masked triangles need to have */
+    private int expected;
+    /** Cached unique id */
+    private int uniqueId;
 
     public ByteCubeFilter(Triangle... sides) {
         for (int i = 0; i < 6; i++) {
             this.sides[i] = (byte) sides[i].ordinal();
         }
+        this.init();
     }
 
     public ByteCubeFilter(ByteCubeFilter raw, Orientation o) {
@@ -41,31 +62,72 @@ public class ByteCubeFilter implements ICubeFilter {
                 }
             }
         }
+        this.init();
     }
 
     public ByteCubeFilter(byte... sides) {
         System.arraycopy(sides, 0, this.sides, 0, 6);
+        this.init();
     }
 
-    @Override
-    public boolean match(byte... triangles) {
+    private ByteCubeFilter(ByteCubeFilter other) {
+        System.arraycopy(other.sides, 0, this.sides, 0, 6);
+        this.equalMask = other.equalMask;
+        this.nonZeroMask = other.nonZeroMask;
+        this.expected = other.expected;
+        this.uniqueId = other.uniqueId;
+    }
+
+    /**
+     * Builds the packed form and the unique id from scratch
+     */
+    private void init() {
+        this.equalMask = this.nonZeroMask = this.expected = this.uniqueId = 0;
         for (int i = 0; i < 6; i++) {
-            if(this.sides[i] == AnyNotNone) {
-                if(triangles[i] == None) return false;
-            }else {
-                if(triangles[i] != this.sides[i]) return false;
-            }
+            this.update(i, None, this.sides[i]);
+        }
+    }
+
+    /**
+     * Moves the packed form and the unique id of the given side from triangle "from" to triangle "to". Doesn't touch "sides".
+     */
+    private void update(int side, byte from, byte to) {
+        int shift = PackedTriangles.shift(side);
+        if(from == AnyNotNone) {
+            this.nonZeroMask &= ~(NonZeroBit << shift);
+            this.expected &= ~(NonZeroBit << shift);
+        }else {
+            this.equalMask &= ~(PackedTriangles.SIDE_MASK << shift);
+            this.expected &= ~(PackedTriangles.SIDE_MASK << shift);
         }
-        return true;
+        if(to == AnyNotNone) {
+            this.nonZeroMask |= NonZeroBit << shift;
+            this.expected |= NonZeroBit << shift;
+        }else {
+            this.equalMask |= PackedTriangles.SIDE_MASK << shift;
+            this.expected |= to << shift;
+        }
+        this.uniqueId += (to - from) * pow6[side];
+    }
+
+    @Override
+    public boolean match(byte... triangles) {
+        return this.match(PackedTriangles.pack(triangles));
+    }
+
+    @Override
+    public boolean match(int packedTriangles) {
+        return (((packedTriangles + NonZeroCarry) & this.nonZeroMask) | (packedTriangles & this.equalMask)) == this.expected;
     }
 
     @Override
     public void setSide(ICube.Side side, Triangle triangle) {
-        this.sides[side.ordinal()] = (byte) triangle.ordinal();
+        this.setSide((byte) side.ordinal(), (byte) triangle.ordinal());
     }
 
     @Override
     public void setSide(byte side, byte triangle) {
+        this.update(side, this.sides[side], triangle);
         this.sides[side] = triangle;
     }
 
@@ -87,18 +149,15 @@ public class ByteCubeFilter implements ICubeFilter {
 
     @Override
     public ICubeFilter cloneFilter() {
-        return new ByteCubeFilter(this.sides);
+        return new ByteCubeFilter(this);
     }
 
-    //https://stackoverflow.com/a/25754257
+    /**
+     * Base 6 number of the sides, see https://stackoverflow.com/a/25754257. Kept up to date by setSide.
+     */
     @Override
     public int getUniqueId() {
-        return  sides[0] * 7776 +
-                sides[1] * 1296 +
-                sides[2] * 216 +
-                sides[3] * 36 +
-                sides[4] * 6 +
-                sides[5];
+        return this.uniqueId;
     }
 
     @Override
@@ -109,7 +168,7 @@ public class ByteCubeFilter implements ICubeFilter {
     @Override
     protected ByteCubeFilter clone() {
         // Can't use native clone here since "sides" is a final array, which is cloned by reference
-        return new ByteCubeFilter(this.sides);
+        return new ByteCubeFilter(this);
     }
 
     @Override
@@ -6,77 +6,146 @@ import abstractions.cube.ICube;
 import abstractions.cube.ICubeFilter;
 import abstractions.cube.ICubeSorter;
 import implementation.Puzzle;
+import implementation.cube.CubeMask;
 import implementation.cube.filter.ByteCubeFilter;
 
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
 
 /**
  * A cube sorter using one huge array for indexing and with duplicate detection. Use only for larger puzzles,
  * otherwise the time spent allocating and null-ing the array will take longer than solving it.
+ * Equal cubes (same unique cube id) are grouped into classes up front. Queries only return the first free cube of each class,
+ * so solvers never branch on cubes that are interchangeable anyway.
+ * Instances are not thread safe, but their clones share the (thread safe) query index. Give each thread its own clone.
  */
 public class ArrayCubeSorter implements ICubeSorter, Cloneable {
 
-    private int cachedQueries = 0;
     /*
-     * Internal caches for writes. Not to be synchronized. Java doesn't have "Zero Cost Abstractions" , so we have to stick to simple data structures like arrays.
+     * Internal caches for writes. Not to be synchronized, each clone gets its own. Java doesn't have "Zero Cost Abstractions" , so we have to stick to simple data structures like arrays.
+     * A class has already been returned by the current query if "classStamps[class] == stamp", so they never need to be cleared.
      */
     private ICube[] cubeCache;
-    private int[] idCache;
-    private QueryResult[] resultCache;
+    private int[] classStamps;
+    private int stamp = 0;
     /**
-     * Since these queries are stateless no conflicting information is written. So no need to synchronize this thing. What could go wrong...
+     * Query index, indexed by the unique id of the filter. Owned by this sorter and shared with all of its clones, so that
+     * any number of threads can work on the same warm index. Entries are built exactly once and published through the
+     * atomic array, so reading them doesn't need any locking.
      */
-    public static final QuerySet[] queries = new QuerySet[46656]; // 6^6
+    private final AtomicReferenceArray<QuerySet> queries = new AtomicReferenceArray<>(46656); // 6^6
+    /** Locks used while building new entries of the query index, striped by filter id. Shared with all clones. */
+    private final Object[] locks = new Object[64];
+    /** Number of entries in the query index. Shared with all clones. */
+    private final AtomicInteger cachedQueries = new AtomicInteger();
     /** Immutable */
     private final ICube[] given;
+    /** Highest identifier of all given cubes */
+    private final int maxId;
+    /** Immutable. Dense number for the unique cube id of each cube, so that equal cubes have the same number. Indexed by the position in "given" */
+    private final int[] classes;
+    /** Number of distinct classes */
+    private final int numClasses;
 
     protected ArrayCubeSorter(ICube[] cubes) {
         this.given = cubes;
+        this.maxId = Arrays.stream(cubes).mapToInt(ICube::getIdentifier).max().orElse(0);
+        this.classes = new int[given.length];
+        HashMap<Integer, Integer> classMap = new HashMap<>();
+        for (int i = 0; i < given.length; i++) {
+            this.classes[i] = classMap.computeIfAbsent(given[i].getUniqueCubeId(), id -> classMap.size());
+        }
+        this.numClasses = classMap.size();
         this.cubeCache = new ICube[given.length * 24];
-        this.idCache = new int[given.length];
-        this.resultCache = new QueryResult[given.length];
+        this.classStamps = new int[this.numClasses];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
     }
 
     @Override
     public void cache(ICubeFilter filter) {
-        this.cache(filter, filter.getUniqueId());
+        this.query(filter);
     }
 
     /**
-     * Looks inside the idCache from index 0 to "idCacheLength"-1 for the id "idToCheck".
-     * If it is found true is returned.
+     * Starts a new query for the duplicate detection
      */
-    private boolean checkIfIdIsAlreadyUsed(int idCacheLength, int idToCheck) {
-        for (int i = 0; i < idCacheLength; i++) {
-            if(idCache[i] == idToCheck) {
-                return true;
-            }
+    private void nextStamp() {
+        if(++this.stamp == 0) { // Overflowed, so old stamps could become valid again
+            Arrays.fill(this.classStamps, 0);
+            this.stamp = 1;
         }
-        return false;
     }
 
     /**
-     * Looks inside the cubeCache from index 0 to "cubeCacheIndex"-1 for a cube with the exact same triangles as "cubeToCheck" in Orientation "o".
+     * Returns whether the given class hasn't been returned by the current query yet, and marks it as returned.
+     */
+    private boolean takeClass(int cls) {
+        if(this.classStamps[cls] == this.stamp) return false;
+        this.classStamps[cls] = this.stamp;
+        return true;
+    }
+
+    /**
+     * Looks inside the given cube cache from index 0 to "cubeCacheIndex"-1 for a cube with the exact same triangles as "cubeToCheck" in Orientation "o".
      * If it is found true is returned.
      */
-    private boolean checkIfOrientationIsAlreadyUsed(int cubeCacheIndex, ICube cubeToCheck, int o) {
+    private static boolean checkIfOrientationIsAlreadyUsed(ICube[] cubeCache, int cubeCacheIndex, ICube cubeToCheck, int o) {
+        int packed = cubeToCheck.getPackedTriangles(o);
         for (int i = 0; i < cubeCacheIndex; i++) {
-            if(Arrays.equals(cubeCache[i].getTriangles(), cubeToCheck.getTriangles(o))) {
+            if(cubeCache[i].getPackedTriangles() == packed) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Returns the entry of the query index for the given filter, building it if necessary.
+     */
+    private QuerySet query(ICubeFilter filter) {
+        int index = filter.getUniqueId();
+        QuerySet query = this.queries.get(index);
+        if(query == null) query = this.cache(filter, index);
+        return query;
+    }
+
+    /**
+     * Builds the entry of the query index for the given filter. If multiple threads request the same entry at once, only one of them builds it.
+     */
     private QuerySet cache(ICubeFilter filter, int index) {
         assert filter.getUniqueId() == index;
 
+        synchronized (this.locks[index & (this.locks.length - 1)]) {
+            QuerySet query = this.queries.get(index);
+            if(query != null) return query; // Someone else was faster
+
+            query = this.build(filter);
+            this.queries.set(index, query);
+            this.cachedQueries.incrementAndGet();
+            return query;
+        }
+    }
+
+    /**
+     * Runs the given filter against all cubes. Only uses local buffers, so it may run on any thread.
+     */
+    private QuerySet build(ICubeFilter filter) {
+        ICube[] cubeCache = new ICube[24];
+        boolean[] seenClasses = new boolean[this.numClasses];
+        QueryResult[] resultCache = new QueryResult[given.length];
+
         boolean hasDuplicates = false;
-        int cubeCacheIndex = 0, resultCacheIndex = 0, idCacheIndex = 0;
-        for (ICube cube : this.given) {
+        int cubeCacheIndex = 0, resultCacheIndex = 0;
+        for (int i = 0; i < this.given.length; i++) {
+            ICube cube = this.given[i];
             for(int o = 0; o < 24; o++) {
-                if(filter.match(cube.getTriangles(o)) && !checkIfOrientationIsAlreadyUsed(cubeCacheIndex, cube, o)) {
+                if(filter.match(cube.getPackedTriangles(o)) && !checkIfOrientationIsAlreadyUsed(cubeCache, cubeCacheIndex, cube, o)) {
                     ICube c = cube.cloneCube();
                     c.setOrientation(Orientation.get(o));
                     cubeCache[cubeCacheIndex++] = c;
@@ -84,33 +153,36 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
             }
 
             if(cubeCacheIndex > 0) {
-                int idToCheck = cube.getUniqueCubeId();
-                if(checkIfIdIsAlreadyUsed(idCacheIndex, idToCheck)) {
-                    hasDuplicates = true;
-                }else {
-                    idCache[idCacheIndex++] = idToCheck;
-                }
+                int cls = this.classes[i];
+                if(seenClasses[cls]) hasDuplicates = true;
+                seenClasses[cls] = true;
                 ICube[] resultCubes = new ICube[cubeCacheIndex];
                 System.arraycopy(cubeCache, 0, resultCubes, 0, cubeCacheIndex);
-                resultCache[resultCacheIndex++] = new QueryResult(cube.getIdentifier(), idToCheck, resultCubes);
+                resultCache[resultCacheIndex++] = new QueryResult(cube.getIdentifier(), cls, resultCubes);
             }
             cubeCacheIndex = 0;
         }
 
         QueryResult[] results = new QueryResult[resultCacheIndex];
         System.arraycopy(resultCache, 0, results, 0, resultCacheIndex);
-        QuerySet tmp = new QuerySet(results, hasDuplicates);
-        queries[index] = tmp;
-        cachedQueries++;
-        return tmp;
+        // Sorted by id, so that the position of each result can be derived from the id mask
+        Arrays.sort(results, Comparator.comparingInt(QueryResult::id));
+
+        long[] mask = CubeMask.create(this.maxId);
+        for (QueryResult result : results) {
+            CubeMask.set(mask, result.id);
+        }
+        int[] offsets = new int[mask.length];
+        for (int i = 1; i < mask.length; i++) {
+            offsets[i] = offsets[i - 1] + Long.bitCount(mask[i - 1]);
+        }
+
+        return new QuerySet(results, hasDuplicates, mask, offsets);
     }
 
     @Override
     public ICube[] matching(ICubeFilter matcher, Predicate<Integer> filter) {
-        // Get current query
-        int queryIndex = matcher.getUniqueId();
-        QuerySet query = queries[queryIndex];
-        if(query == null) query = this.cache(matcher, queryIndex);
+        QuerySet query = this.query(matcher);
 
         if(query.hasDuplicates) {
             return matchingDuplicate(query, filter);
@@ -120,15 +192,11 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
     }
 
     private ICube[] matchingDuplicate(QuerySet query, Predicate<Integer> filter) {
-        int cubeCacheIndex = 0, idCacheIndex = 0;
+        this.nextStamp();
+        int cubeCacheIndex = 0;
         for (QueryResult result : query.results) {
             if(filter.test(result.id)) {
-                int idToCheck = result.uniqueCubeId;
-                if(checkIfIdIsAlreadyUsed(idCacheIndex, idToCheck)) {
-                    continue;
-                }else {
-                    idCache[idCacheIndex++] = idToCheck;
-                }
+                if(!this.takeClass(result.cls)) continue; // An equal cube has already been returned
                 int length = result.cubes.length;
                 System.arraycopy(result.cubes, 0, this.cubeCache, cubeCacheIndex, length);
                 cubeCacheIndex += length;
@@ -155,13 +223,42 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
         return result;
     }
 
-    /**
-     * Returns all orientations of any one cube that the given filter matches
-     */
+    @Override
+    public ICube[] matching(ICubeFilter matcher, long[] usedMask) {
+        int length = this.matchingInto(matcher, usedMask, this.cubeCache);
+        return Arrays.copyOf(this.cubeCache, length);
+    }
+
+    @Override
+    public int matchingInto(ICubeFilter matcher, long[] usedMask, ICube[] dest) {
+        QuerySet query = this.query(matcher);
+
+        if(query.hasDuplicates) this.nextStamp();
+        int destIndex = 0;
+        long[] mask = query.mask;
+        for (int w = 0; w < mask.length; w++) {
+            long free = mask[w] & ~usedMask[w]; // All matching cubes in this word that are not used yet
+            while (free != 0) {
+                long bit = free & -free;
+                free ^= bit;
+                QueryResult result = query.results[query.offsets[w] + Long.bitCount(mask[w] & (bit - 1))];
+                if(query.hasDuplicates && !this.takeClass(result.cls)) continue; // An equal cube has already been returned
+                int length = result.cubes.length;
+                if(destIndex + length <= dest.length) {
+                    System.arraycopy(result.cubes, 0, dest, destIndex, length);
+                } else if(destIndex < dest.length) { // Buffer too small, just fill up what's left and keep counting
+                    System.arraycopy(result.cubes, 0, dest, destIndex, dest.length - destIndex);
+                }
+                destIndex += length;
+            }
+        }
+
+        return destIndex;
+    }
+
+    @Override
     public ICube[] matchingAny(ICubeFilter filter) {
-        int queryIndex = filter.getUniqueId();
-        QuerySet query = queries[queryIndex];
-        if(query == null) query = this.cache(filter, queryIndex);
+        QuerySet query = this.query(filter);
 
         if(query.results.length == 0) return new ICube[0];
         return Arrays.copyOf(query.results[0].cubes, query.results[0].cubes.length);
@@ -169,9 +266,7 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
 
     @Override
     public int count(ICubeFilter matcher, Predicate<Integer> filter) {
-        int index = matcher.getUniqueId();
-        QuerySet query = queries[index];
-        if(query == null) query = this.cache(matcher, index);
+        QuerySet query = this.query(matcher);
 
         int count = 0;
         for (QueryResult result : query.results) {
@@ -183,20 +278,44 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
         return count;
     }
 
+    @Override
+    public int count(ICubeFilter matcher, long[] usedMask) {
+        QuerySet query = this.query(matcher);
+
+        int count = 0;
+        long[] mask = query.mask;
+        for (int w = 0; w < mask.length; w++) {
+            long free = mask[w] & ~usedMask[w];
+            while (free != 0) {
+                long bit = free & -free;
+                free ^= bit;
+                count += query.results[query.offsets[w] + Long.bitCount(mask[w] & (bit - 1))].cubes.length;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public long[] candidates(ICubeFilter matcher) {
+        return this.query(matcher).mask;
+    }
+
+    @Override
+    public int countCubes(ICubeFilter matcher, long[] usedMask) {
+        return CubeMask.countFree(this.query(matcher).mask, usedMask);
+    }
+
     @Override
     public int unique(ICubeFilter f) {
-        int index = f.getUniqueId();
-        QuerySet query = queries[index];
-        if(query == null) query = this.cache(f, index);
+        QuerySet query = this.query(f);
 
         return query.results.length;
     }
 
     @Override
     public int unique(CubeType type) {
-        int index = type.predicate.getUniqueId();
-        QuerySet query = queries[index];
-        if(query == null) query = this.cache(type.predicate, index);
+        QuerySet query = this.query(type.predicate);
 
         if(Puzzle.DEBUG) {
             int duplicates = 0;
@@ -213,7 +332,7 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
 
     @Override
     public int getNumCachedQueries() {
-        return this.cachedQueries;
+        return this.cachedQueries.get();
     }
 
     @Override
@@ -221,21 +340,29 @@ public class ArrayCubeSorter implements ICubeSorter, Cloneable {
         return this.given.length;
     }
 
+    @Override
+    public ICubeSorter cloneSorter() {
+        return this.clone();
+    }
+
     public ArrayCubeSorter clone() {
         try {
             ArrayCubeSorter clone = (ArrayCubeSorter) super.clone();
             clone.cubeCache = new ICube[given.length * 24];
-            clone.idCache = new int[given.length];
-            clone.resultCache = new QueryResult[given.length];
+            clone.classStamps = new int[this.numClasses];
+            clone.stamp = 0;
             return clone;
         } catch (CloneNotSupportedException e) { // Should not happen.
             throw new UnsupportedOperationException(e);
         }
     }
 
-    /** Wrapper for a single cube in all orientations it matches the query in */
-    private record QueryResult(int id, int uniqueCubeId, ICube[] cubes) {}
+    /** Wrapper for a single cube in all orientations it matches the query in. "cls" is the class of equal cubes it belongs to */
+    private record QueryResult(int id, int cls, ICube[] cubes) {}
 
-    /** Wrapper for multiple cubes in multiple orientations */
-    private record QuerySet(QueryResult[] results, boolean hasDuplicates) {}
+    /**
+     * Wrapper for multiple cubes in multiple orientations. The results are sorted by id, "mask" holds the ids of all results
+     * and "offsets" the number of results in front of each word of the mask.
+     */
+    private record QuerySet(QueryResult[] results, boolean hasDuplicates, long[] mask, int[] offsets) {}
 }
@@ -0,0 +1,345 @@
+package implementation.cube.sorter;
+
+import abstractions.Orientation;
+import abstractions.cube.ICube;
+import abstractions.cube.ICubeFilter;
+import abstractions.cube.ICubeSorter;
+import abstractions.cube.Triangle;
+import implementation.cube.CubeMask;
+import implementation.cube.PackedTriangles;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * A cube sorter using an inverted index: For each side and each value of a filter on that side, it holds a bitset over
+ * all cubes in all their orientations matching that side. A query just intersects the six bitsets of the filter, so there
+ * is nothing to cache and the first query of any filter is as cheap as every following one. The memory needed only depends
+ * on the number of cubes, not on the number of distinct filters.
+ * Instances are not thread safe, but their clones share the (immutable) index. Give each thread its own clone.
+ */
+public class BitsetCubeSorter implements ICubeSorter, Cloneable {
+    /** Bits per word of the bitsets */
+    private static final int WORD = 64;
+    /** Number of values a filter may have on a side, including {@link Triangle#AnyNotNone} */
+    private static final int VALUES = 6;
+    private static final int AnyNotNone = Triangle.AnyNotNone.ordinal();
+
+    /** Immutable, sorted by identifier. Cube i in orientation o has the handle i*24+o */
+    private final ICube[] given;
+    /** Immutable. All cubes in all their orientations, indexed by handle. Null for orientations that repeat an earlier one of the same cube */
+    private final ICube[] oriented;
+    /** Immutable. Bitsets over handles, indexed by side * VALUES + filter value */
+    private final long[][] index;
+    /** Immutable. Bitset over all handles that are not null in "oriented" */
+    private final long[] distinct;
+    /** Immutable. Identifier of each cube, indexed by the handle / 24 */
+    private final int[] ids;
+    /** Immutable. Dense number for the unique cube id of each cube, so that equal cubes have the same number. Indexed by the handle / 24 */
+    private final int[] classes;
+    /** Whether any two cubes are equal */
+    private final boolean hasDuplicates;
+
+    /*
+     * Internal caches for duplicate detection. Not to be synchronized, each clone gets its own.
+     * A class is taken by cube "owner[class]" if "stamps[class] == stamp", so they never need to be cleared.
+     */
+    private int[] stamps;
+    private int[] owner;
+    private int stamp = 0;
+    /* Internal buffer of countCubes, a mask over the identifiers of the cubes matching the query. Each clone gets its own */
+    private long[] matched;
+
+    protected BitsetCubeSorter(ICube[] cubes) {
+        this.given = cubes.clone();
+        Arrays.sort(this.given, Comparator.comparingInt(ICube::getIdentifier));
+
+        int handles = this.given.length * 24;
+        int words = (handles + WORD - 1) / WORD;
+        this.oriented = new ICube[handles];
+        this.index = new long[6 * VALUES][words];
+        this.distinct = new long[words];
+        this.ids = new int[this.given.length];
+        this.classes = new int[this.given.length];
+
+        HashMap<Integer, Integer> classMap = new HashMap<>();
+        int[] packed = new int[24];
+        for (int i = 0; i < this.given.length; i++) {
+            ICube cube = this.given[i];
+            this.ids[i] = cube.getIdentifier();
+            this.classes[i] = classMap.computeIfAbsent(cube.getUniqueCubeId(), id -> classMap.size());
+
+            orientations:
+            for (int o = 0; o < 24; o++) {
+                packed[o] = cube.getPackedTriangles(o);
+                for (int p = 0; p < o; p++) {
+                    if(packed[p] == packed[o]) continue orientations; // Same triangles as an earlier orientation
+                }
+
+                int handle = i * 24 + o;
+                ICube c = cube.cloneCube();
+                c.setOrientation(Orientation.get(o));
+                this.oriented[handle] = c;
+                set(this.distinct, handle);
+                for (int side = 0; side < 6; side++) {
+                    int triangle = PackedTriangles.get(packed[o], side);
+                    set(this.index[side * VALUES + triangle], handle);
+                    if(triangle != Triangle.None.ordinal()) set(this.index[side * VALUES + AnyNotNone], handle);
+                }
+            }
+        }
+
+        this.hasDuplicates = classMap.size() < this.given.length;
+        this.stamps = new int[classMap.size()];
+        this.owner = new int[classMap.size()];
+        this.matched = CubeMask.create(this.maxId());
+    }
+
+    private int maxId() {
+        return this.ids.length == 0 ? 0 : this.ids[this.ids.length - 1];
+    }
+
+    private static void set(long[] bitset, int handle) {
+        bitset[handle / WORD] |= 1L << handle;
+    }
+
+    /**
+     * Returns the given word of the intersection of all bitsets the filter consists of
+     */
+    private long word(byte[] sides, int w) {
+        long word = this.distinct[w];
+        for (int side = 0; side < 6 && word != 0; side++) {
+            word &= this.index[side * VALUES + sides[side]][w];
+        }
+        return word;
+    }
+
+    /**
+     * Returns whether the given cube is the first one of its class in this query. Always true if there are no duplicates.
+     */
+    private boolean takeClass(int cube) {
+        if(!this.hasDuplicates) return true;
+        int c = this.classes[cube];
+        if(this.stamps[c] != this.stamp) {
+            this.stamps[c] = this.stamp;
+            this.owner[c] = cube;
+            return true;
+        }
+        return this.owner[c] == cube;
+    }
+
+    /**
+     * Returns whether the given cube may be used. Checks the mask if there is one, the predicate otherwise.
+     */
+    private boolean isFree(int cube, long[] usedMask, Predicate<Integer> filter) {
+        return usedMask != null ? !CubeMask.isSet(usedMask, this.ids[cube]) : filter.test(this.ids[cube]);
+    }
+
+    /**
+     * Starts a new query for the duplicate detection
+     */
+    private void nextStamp() {
+        if(++this.stamp == 0) { // Overflowed, so old stamps could become valid again
+            Arrays.fill(this.stamps, 0);
+            this.stamp = 1;
+        }
+    }
+
+    @Override
+    public void cache(ICubeFilter filter) {
+        // Nothing to cache
+    }
+
+    @Override
+    public ICube[] matching(ICubeFilter matcher, Predicate<Integer> filter) {
+        ICube[] dest = new ICube[this.oriented.length];
+        int length = this.matchingInto(matcher, null, filter, dest);
+        return Arrays.copyOf(dest, length);
+    }
+
+    @Override
+    public ICube[] matching(ICubeFilter matcher, long[] usedMask) {
+        ICube[] dest = new ICube[this.oriented.length];
+        int length = this.matchingInto(matcher, usedMask, null, dest);
+        return Arrays.copyOf(dest, length);
+    }
+
+    @Override
+    public int matchingInto(ICubeFilter matcher, long[] usedMask, ICube[] dest) {
+        return this.matchingInto(matcher, usedMask, null, dest);
+    }
+
+    /**
+     * Writes all matching cubes into dest, see {@link ICubeSorter#matchingInto(ICubeFilter, long[], ICube[])}.
+     * Uses the mask if it isn't null, the predicate otherwise.
+     */
+    private int matchingInto(ICubeFilter matcher, long[] usedMask, Predicate<Integer> filter, ICube[] dest) {
+        byte[] sides = matcher.getTriangles();
+        this.nextStamp();
+
+        int destIndex = 0;
+        int lastCube = -1;
+        boolean lastFree = false;
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            while (word != 0) {
+                int handle = w * WORD + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int cube = handle / 24;
+                if(cube != lastCube) { // Each cube is only tested once
+                    lastCube = cube;
+                    lastFree = this.isFree(cube, usedMask, filter) && this.takeClass(cube);
+                }
+                if(!lastFree) continue;
+                if(destIndex < dest.length) dest[destIndex] = this.oriented[handle];
+                destIndex++;
+            }
+        }
+
+        return destIndex;
+    }
+
+    @Override
+    public ICube[] matchingAny(ICubeFilter filter) {
+        byte[] sides = filter.getTriangles();
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            if(word == 0) continue;
+            int cube = (w * WORD + Long.numberOfTrailingZeros(word)) / 24;
+            return this.matching(filter, id -> id == this.ids[cube]);
+        }
+        return new ICube[0];
+    }
+
+    @Override
+    public int count(ICubeFilter matcher, Predicate<Integer> filter) {
+        return this.count(matcher, null, filter);
+    }
+
+    @Override
+    public int count(ICubeFilter matcher, long[] usedMask) {
+        return this.count(matcher, usedMask, null);
+    }
+
+    /**
+     * Counts all matching cubes. Uses the mask if it isn't null, the predicate otherwise.
+     */
+    private int count(ICubeFilter matcher, long[] usedMask, Predicate<Integer> filter) {
+        byte[] sides = matcher.getTriangles();
+
+        int count = 0;
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            while (word != 0) {
+                int handle = w * WORD + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if(this.isFree(handle / 24, usedMask, filter)) count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public long[] candidates(ICubeFilter matcher) {
+        byte[] sides = matcher.getTriangles();
+        long[] mask = CubeMask.create(this.maxId());
+
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            while (word != 0) {
+                CubeMask.set(mask, this.ids[(w * WORD + Long.numberOfTrailingZeros(word)) / 24]);
+                word &= word - 1;
+            }
+        }
+
+        return mask;
+    }
+
+    @Override
+    public int countCubes(ICubeFilter matcher, long[] usedMask) {
+        return this.countCubes(matcher, usedMask, true);
+    }
+
+    @Override
+    public int unique(ICubeFilter f) {
+        return this.countCubes(f, null, false);
+    }
+
+    /**
+     * Same walk as {@link #countCubes(ICubeFilter, long[], boolean)}, but tests each matching cube right away and stops at the
+     * first free one. Allocates nothing, since forward checking calls this for every neighbor after each placement.
+     */
+    @Override
+    public boolean hasCubes(ICubeFilter matcher, long[] usedMask) {
+        byte[] sides = matcher.getTriangles();
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            while (word != 0) {
+                int cube = (w * WORD + Long.numberOfTrailingZeros(word)) / 24;
+                if(!CubeMask.isSet(usedMask, this.ids[cube])) return true;
+                word &= ~segment(cube, w); // The other orientations of this cube in the word are used as well
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the cubes (not orientations) matching the given filter. Ignores the mask if "useMask" is false.
+     * Each word of the index only touches a few cubes, so it is reduced to their identifiers with one test per cube instead of
+     * one per orientation. The free ones are then counted a word at a time, see {@link CubeMask#countFree(long[], long[])}.
+     */
+    private int countCubes(ICubeFilter matcher, long[] usedMask, boolean useMask) {
+        byte[] sides = matcher.getTriangles();
+        long[] matched = this.matched;
+        Arrays.fill(matched, 0);
+
+        for (int w = 0; w < this.distinct.length; w++) {
+            long word = this.word(sides, w);
+            if(word == 0) continue;
+            for (int cube = w * WORD / 24; cube <= (w * WORD + WORD - 1) / 24 && cube < this.ids.length; cube++) {
+                if((word & segment(cube, w)) != 0) CubeMask.set(matched, this.ids[cube]);
+            }
+        }
+
+        return useMask ? CubeMask.countFree(matched, usedMask) : CubeMask.count(matched);
+    }
+
+    /**
+     * Returns the bits of the given word that hold the orientations of the given cube.
+     */
+    private static long segment(int cube, int w) {
+        int from = Math.max(cube * 24 - w * WORD, 0), to = Math.min(cube * 24 + 24 - w * WORD, WORD);
+        return (-1L << from) & (to == WORD ? -1L : (1L << to) - 1);
+    }
+
+    @Override
+    public int getNumCachedQueries() {
+        return 0;
+    }
+
+    @Override
+    public int getNumCubes() {
+        return this.given.length;
+    }
+
+    @Override
+    public ICubeSorter cloneSorter() {
+        return this.clone();
+    }
+
+    public BitsetCubeSorter clone() {
+        try {
+            BitsetCubeSorter clone = (BitsetCubeSorter) super.clone();
+            clone.stamps = new int[this.stamps.length];
+            clone.owner = new int[this.owner.length];
+            clone.stamp = 0;
+            clone.matched = new long[this.matched.length];
+            return clone;
+        } catch (CloneNotSupportedException e) { // Should not happen.
+            throw new UnsupportedOperationException(e);
+        }
+    }
+}
@@ -4,9 +4,15 @@ import abstractions.cube.CubeType;
 import abstractions.cube.ICube;
 import abstractions.cube.ICubeSorter;
 
-import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
 public final class CubeSorterFactory {
+    /**
+     * Up to this many cubes a {@link BitsetCubeSorter} answers queries faster than the lazily built index of the {@link ArrayCubeSorter},
+     * even when the latter is warm. Above it, the bitsets get too long to intersect on every query.
+     */
+    private static final int BITSET_LIMIT = 40;
 
     public static ICubeSorter from(ICube[] cubes) {
         if(cubes.length < 20 ) return new HashCubeSorter(cubes);
@@ -21,7 +27,24 @@ public final class CubeSorterFactory {
         return new ArrayCubeSorter(cubes);
     }
 
+    public static BitsetCubeSorter makeBitsetCubeSorter(ICube[] cubes) {
+        return new BitsetCubeSorter(cubes);
+    }
+
     public static ArrayCubeSorter from(ICube[] cubes, CubeType t) {
         return new ArrayCubeSorter(cubes);
     }
+
+    /**
+     * Creates one sorter per cube type. Use {@link ICubeSorter#cloneSorter()} for each thread, so they share the same index.
+     * Small types get an inverted bitset index, larger ones a cached index.
+     */
+    public static EnumMap<CubeType, ICubeSorter> from(EnumMap<CubeType, ICube[]> cubeMap) {
+        EnumMap<CubeType, ICubeSorter> sorterMap = new EnumMap<>(CubeType.class);
+        for (Map.Entry<CubeType, ICube[]> entry : cubeMap.entrySet()) {
+            sorterMap.put(entry.getKey(), entry.getValue().length <= BITSET_LIMIT ?
+                    makeBitsetCubeSorter(entry.getValue()) : from(entry.getValue(), entry.getKey()));
+        }
+        return sorterMap;
+    }
 }
@@ -4,18 +4,21 @@ import abstractions.Orientation;
 import abstractions.cube.ICube;
 import abstractions.cube.ICubeFilter;
 import abstractions.cube.ICubeSorter;
+import implementation.cube.CubeMask;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.function.Predicate;
 
 /**
  * A data structure to store cubes and query for specific ones. Queries are cached using a HashMap.
+ * Results of equal cubes (same unique cube id) are stored next to each other, and queries only return the first free cube of them.
  */
 public class HashCubeSorter implements ICubeSorter {
     /** Wrapper for a query result. God, why doesn't this language support tuples... */
-    private record QueryResult(int id, ICube[] cubes) {}
+    private record QueryResult(int id, int uniqueCubeId, ICube[] cubes) {}
 
     private final HashMap<ICubeFilter, QueryResult[]> queries = new HashMap<>();
     /** Immutable */
@@ -39,10 +42,12 @@ public class HashCubeSorter implements ICubeSorter {
             }
 
             if(!cubes.isEmpty()) {
-                results.add(new QueryResult(cube.getIdentifier(), cubes.toArray(new ICube[0])));
+                results.add(new QueryResult(cube.getIdentifier(), cube.getUniqueCubeId(), cubes.toArray(new ICube[0])));
             }
             cubes.clear();
         }
+        // Groups equal cubes, the sort is stable so the order of the identifiers is kept inside the groups
+        results.sort(Comparator.comparingInt(QueryResult::uniqueCubeId));
 
         this.queries.put(filter.cloneFilter(), results.toArray(new QueryResult[0]));
     }
@@ -67,15 +72,37 @@ public class HashCubeSorter implements ICubeSorter {
         prepareMatching(matcher);
 
         ArrayList<ICube> cubes = new ArrayList<>();
+        QueryResult last = null;
         for (QueryResult result : queries.get(matcher)) {
+            if(last != null && last.uniqueCubeId == result.uniqueCubeId) continue; // An equal cube has already been returned
             if(filter.test(result.id)) {
                 cubes.addAll(List.of(result.cubes));
+                last = result;
             }
         }
 
         return cubes.toArray(new ICube[0]);
     }
 
+    @Override
+    public int matchingInto(ICubeFilter matcher, long[] usedMask, ICube[] dest) {
+        prepareMatching(matcher);
+
+        int destIndex = 0;
+        QueryResult last = null;
+        for (QueryResult result : queries.get(matcher)) {
+            if(last != null && last.uniqueCubeId == result.uniqueCubeId) continue; // An equal cube has already been returned
+            if(!CubeMask.isSet(usedMask, result.id)) {
+                int length = Math.min(result.cubes.length, dest.length - destIndex);
+                if(length > 0) System.arraycopy(result.cubes, 0, dest, destIndex, length);
+                destIndex += result.cubes.length;
+                last = result;
+            }
+        }
+
+        return destIndex;
+    }
+
     @Override
     public int count(ICubeFilter matcher, Predicate<Integer> filter) {
         prepareMatching(matcher);
@@ -89,6 +116,18 @@ public class HashCubeSorter implements ICubeSorter {
         return count;
     }
 
+    /**
+     * Walks the cached query and stops at the first free cube, without building the mask of all candidates first.
+     */
+    @Override
+    public boolean hasCubes(ICubeFilter matcher, long[] usedMask) {
+        prepareMatching(matcher);
+        for (QueryResult result : queries.get(matcher)) {
+            if(!CubeMask.isSet(usedMask, result.id)) return true;
+        }
+        return false;
+    }
+
     @Override
     public int unique(ICubeFilter f) {
         prepareMatching(f);
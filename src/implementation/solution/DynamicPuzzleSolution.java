@@ -13,6 +13,8 @@ public class DynamicPuzzleSolution implements IPuzzleSolution {
     private final ICube[][][] cubes;
     private final ICubeFilter[][][] filters;
     private final FixedArrayStack<SetOperation> operations;
+    /* Reusable operations, indexed by their position in the stack */
+    private final SetOperation[] operationPool;
 
     public DynamicPuzzleSolution(int dimensionX, int dimensionY, int dimensionZ) {
         this.dimensionX = dimensionX;
@@ -21,6 +23,10 @@ public class DynamicPuzzleSolution implements IPuzzleSolution {
         this.cubes = new ICube[dimensionX][dimensionY][dimensionZ];
         this.filters = new ICubeFilter[dimensionX][dimensionY][dimensionZ];
         this.operations = new FixedArrayStack<>(new SetOperation[dimensionX*dimensionY*dimensionZ]);
+        this.operationPool = new SetOperation[dimensionX*dimensionY*dimensionZ];
+        for (int i = 0; i < this.operationPool.length; i++) {
+            this.operationPool[i] = new SetOperation();
+        }
 
         for (int x = 0; x < dimensionX; x++) {
             for (int y = 0; y < dimensionY; y++) {
@@ -75,7 +81,12 @@ public class DynamicPuzzleSolution implements IPuzzleSolution {
 
         // Setting the cube
         ICube tmp = this.cubes[x][y][z];
-        this.operations.addLast(new SetOperation(x, y, z, tmp));
+        SetOperation op = this.operationPool[this.operations.size()];
+        op.x = x;
+        op.y = y;
+        op.z = z;
+        op.previous = tmp;
+        this.operations.addLast(op);
         this.cubes[x][y][z] = cube;
         return tmp;
     }
@@ -161,7 +172,10 @@ public class DynamicPuzzleSolution implements IPuzzleSolution {
     }
 
     /**
-     * Contains an atomic operation made on this solution.
+     * Contains an atomic operation made on this solution. Reused once undone.
      */
-    private record SetOperation(int x, int y, int z, ICube previous) {}
+    private static final class SetOperation {
+        private int x, y, z;
+        private ICube previous;
+    }
 }
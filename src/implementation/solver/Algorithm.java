@@ -0,0 +1,17 @@
+package implementation.solver;
+
+/**
+ * Algorithm used to solve a puzzle, see {@link SolverFactory#of(Algorithm, int, int, int, abstractions.cube.ICube[])}.
+ */
+public enum Algorithm {
+    /** The solver {@link SolverFactory#of(int, int, int, abstractions.cube.ICube[])} picks for the shape of the puzzle */
+    Default,
+    /** {@link DancingLinksSolver} */
+    DancingLinks,
+    /** {@link SatSolver} */
+    Sat,
+    /** The solver picked for the shape, randomized and restarted, see {@link SolverFactory#restarts} */
+    Restarts,
+    /** Several solvers racing each other, see {@link SolverFactory#portfolio} */
+    Portfolio
+}
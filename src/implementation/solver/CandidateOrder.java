@@ -0,0 +1,18 @@
+package implementation.solver;
+
+/**
+ * Order in which a {@link TreeSolver} tries the candidates for a position. Only matters until the first solution is found,
+ * since every order searches the same tree.
+ */
+public enum CandidateOrder {
+    /** Order of the sorter, which is by id. Costs nothing */
+    Sorter,
+    /** Candidates leaving more free cubes for the next position come first, the ones leaving none last */
+    Lookahead,
+    /** Candidates leaving more free cubes for all empty neighbors together come first, the ones leaving none for any neighbor last */
+    LeastConstraining,
+    /** Candidates exposing triangles that more cubes of the neighboring types could match come first. Ignores which cubes are used already, so it is cheap */
+    Rarity,
+    /** Shuffled with the seed of the solver, see {@link RestartSolverContainer}. Every seed takes its own path through the tree */
+    Random
+}
@@ -0,0 +1,398 @@
+package implementation.solver;
+
+import abstractions.IEnumeratingSolver;
+import abstractions.IPuzzleSolution;
+import abstractions.IPuzzleSolver;
+import abstractions.PuzzleNotSolvableException;
+import abstractions.cube.ICube;
+import implementation.Puzzle;
+import implementation.cube.PackedTriangles;
+import implementation.solution.DynamicPuzzleSolution;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Solves the puzzle as an exact cover problem with Dancing Links (Knuth's Algorithm X on a toroidal linked list).
+ * Each position has to be filled exactly once and each cube has to be used exactly once. Each row places one cube in one
+ * orientation on one position, so it covers exactly two columns.
+ * <br>
+ * Adjacent faces have to match as well, which is no exact cover constraint. So once a row is chosen, all rows on the empty
+ * neighboring positions that don't match it are hidden. This keeps the column sizes exact, so empty columns are found right away.
+ * Columns are chosen like positions in {@link StagedSolver#setNextCoordsDynamic()}: The plain smallest column tends to start
+ * at several ends of the puzzle, which only run into each other at the very end.
+ * <br>
+ * The links are plain int arrays, node 0 being the root and nodes 1 to (number of columns) the column headers.
+ */
+public class DancingLinksSolver implements IPuzzleSolver, IEnumeratingSolver {
+    /* Immutable */
+    public final int dimensionX, dimensionY, dimensionZ;
+    private final ICube[] cubes;
+    private static final int ROOT = 0;
+
+    /* Immutable after prepare(). Links of each node, the column it belongs to and the row it is part of */
+    private int[] left, right, up, down, column, rowOf;
+    /* Mutable after prepare(). Number of nodes in each column, indexed by node of the column header */
+    private int[] size;
+    /* Immutable after prepare(). Position, packed triangles and oriented cube of each row */
+    private int[] rowPosition, rowPacked;
+    /* Immutable after prepare(). Whether an earlier row on the same position places an equal cube the same way */
+    private boolean[] rowRepeats;
+    private ICube[] rowCube;
+    /* Immutable. Neighboring positions of each position, indexed by position * 6 + side, -1 if there is none */
+    private final int[] neighbors;
+
+    /* Mutable search state, indexed by level: The column chosen and the node of the row tried in it, and the size of the hidden stack before */
+    private final int[] levelColumn, levelNode, levelHidden;
+    /* Mutable. Rows hidden because they don't match a chosen row, in the order they were hidden */
+    private int[] hidden;
+    private int hiddenSize = 0;
+    /* Mutable. Whether a row has been chosen for each position, and the number of neighbors of each position that have been */
+    private final boolean[] filled;
+    private final int[] filledNeighbors;
+    private int level = 0;
+    /* Mutable counters, used for logging */
+    private volatile long iter = 0;
+    private volatile int maxLevel = 0;
+    /* Immutable while preparing and searching. Receives all solutions if they are enumerated, otherwise null */
+    private Consumer<IPuzzleSolution> consumer = null;
+    /* Mutable. Number of solutions handed to the consumer so far */
+    private long solutions = 0;
+
+    protected DancingLinksSolver(int dimensionX, int dimensionY, int dimensionZ, ICube[] cubes) {
+        this.dimensionX = dimensionX;
+        this.dimensionY = dimensionY;
+        this.dimensionZ = dimensionZ;
+        this.cubes = cubes;
+
+        int positions = dimensionX * dimensionY * dimensionZ;
+        this.neighbors = new int[positions * 6];
+        for (int z = 0; z < dimensionZ; z++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int x = 0; x < dimensionX; x++) {
+                    for (ICube.Side s : ICube.Side.values()) {
+                        int x2 = x + s.x, y2 = y + s.y, z2 = z + s.z;
+                        boolean valid = x2 >= 0 && x2 < dimensionX && y2 >= 0 && y2 < dimensionY && z2 >= 0 && z2 < dimensionZ;
+                        this.neighbors[position(x, y, z) * 6 + s.ordinal()] = valid ? position(x2, y2, z2) : -1;
+                    }
+                }
+            }
+        }
+
+        this.levelColumn = new int[positions];
+        this.levelNode = new int[positions];
+        this.levelHidden = new int[positions];
+        this.filled = new boolean[positions];
+        this.filledNeighbors = new int[positions];
+    }
+
+    private int position(int x, int y, int z) {
+        return x + dimensionX * (y + dimensionY * z);
+    }
+
+    /**
+     * Builds the rows, one for each of the {@link Placements}, and resets the search, so it starts over even if an earlier search
+     * stopped halfway.
+     * @throws PuzzleNotSolvableException If a position or cube has no rows at all
+     */
+    @Override
+    public void prepare() throws PuzzleNotSolvableException {
+        int positions = dimensionX * dimensionY * dimensionZ;
+        Placements placements = new Placements(dimensionX, dimensionY, dimensionZ, this.cubes, this.consumer != null);
+
+        int columns = positions + this.cubes.length, rows = placements.size();
+        int nodes = 1 + columns + 2 * rows;
+        this.left = new int[nodes];
+        this.right = new int[nodes];
+        this.up = new int[nodes];
+        this.down = new int[nodes];
+        this.column = new int[nodes];
+        this.rowOf = new int[nodes];
+        this.size = new int[1 + columns];
+        this.rowPosition = new int[rows];
+        this.rowPacked = new int[rows];
+        this.rowRepeats = new boolean[rows];
+        this.rowCube = placements.oriented;
+        this.hidden = new int[rows];
+        this.hiddenSize = 0;
+        this.level = 0;
+        this.maxLevel = 0;
+        Arrays.fill(this.filled, false);
+        Arrays.fill(this.filledNeighbors, 0);
+
+        for (int c = 0; c <= columns; c++) {
+            this.left[c] = c == 0 ? columns : c - 1;
+            this.right[c] = c == columns ? 0 : c + 1;
+            this.up[c] = c;
+            this.down[c] = c;
+            this.column[c] = c;
+        }
+        for (int r = 0; r < rows; r++) {
+            this.rowPosition[r] = placements.position[r];
+            this.rowPacked[r] = this.rowCube[r].getPackedTriangles();
+            for (int r2 = r - 1; r2 >= 0 && this.rowPosition[r2] == this.rowPosition[r] && !this.rowRepeats[r]; r2--) {
+                this.rowRepeats[r] = this.rowPacked[r2] == this.rowPacked[r];
+            }
+            int n = 1 + columns + 2 * r;
+            this.append(n, 1 + placements.position[r], r);
+            this.append(n + 1, 1 + positions + placements.cube[r], r);
+            this.left[n] = this.right[n] = n + 1;
+            this.left[n + 1] = this.right[n + 1] = n;
+        }
+
+        for (int c = 1; c <= columns; c++) {
+            if(this.size[c] == 0) throw new PuzzleNotSolvableException(c <= positions ? "No cube fits position " + (c - 1) : "Cube " + this.cubes[c - 1 - positions].getIdentifier() + " fits nowhere");
+        }
+        if(Puzzle.LOG) System.out.printf("Exact cover with %d columns and %d rows\n", columns, rows);
+    }
+
+    /**
+     * Adds the given node at the bottom of the given column
+     */
+    private void append(int node, int col, int row) {
+        this.column[node] = col;
+        this.rowOf[node] = row;
+        this.up[node] = this.up[col];
+        this.down[node] = col;
+        this.down[this.up[col]] = node;
+        this.up[col] = node;
+        this.size[col]++;
+    }
+
+    @Override
+    public IPuzzleSolution solve() throws PuzzleNotSolvableException {
+        return this.search(false);
+    }
+
+    @Override
+    public IPuzzleSolution solveConcurrent() throws PuzzleNotSolvableException {
+        return this.search(true);
+    }
+
+    /**
+     * Runs on the calling thread and ignores interrupts. Only branches on positions, so equal cubes are skipped like in
+     * {@link #isTried(int, int)} and each solution is found once.
+     */
+    @Override
+    public long enumerate(Consumer<IPuzzleSolution> consumer) {
+        this.consumer = consumer;
+        this.solutions = 0;
+        try {
+            this.prepare(); // Rotated solutions need rows of their own
+            this.search(false);
+        } catch (PuzzleNotSolvableException e) {
+            // Nothing left to search
+        } finally {
+            this.consumer = null;
+        }
+        return this.solutions;
+    }
+
+    /**
+     * Runs Algorithm X without recursion. Each level chooses a column and tries its rows one after another.
+     * Returns null if "interruptible" is set and the thread got interrupted.
+     * @throws PuzzleNotSolvableException If there is no solution
+     */
+    private IPuzzleSolution search(boolean interruptible) throws PuzzleNotSolvableException {
+        boolean descend = true;
+        long iter = this.iter;
+        try {
+            while(true) {
+                if((++iter & 0xFFFF) == 0) {
+                    this.iter = iter;
+                    if(interruptible && Thread.currentThread().isInterrupted()) {
+                        if(Puzzle.LOG) System.out.println("Got interrupted, exiting!");
+                        return null;
+                    }
+                }
+
+                if(descend && this.right[ROOT] == ROOT) {
+                    if(this.consumer == null) return this.toSolution();
+                    this.solutions++;
+                    this.consumer.accept(this.toSolution());
+                    this.level--;
+                    descend = false;
+                }
+                if(descend) {
+                    int c = this.smallestColumn();
+                    this.cover(c);
+                    this.levelColumn[this.level] = c;
+                    this.levelNode[this.level] = c;
+                    if(this.level > this.maxLevel) this.maxLevel = this.level;
+                }
+
+                // Moves on to the next row of the column on this level
+                int c = this.levelColumn[this.level], n = this.levelNode[this.level];
+                if(n != c) this.unselect(n);
+                n = this.down[n];
+                if(c <= this.filled.length) {
+                    while(n != c && this.isTried(c, n)) n = this.down[n];
+                }
+                if(n == c) {
+                    this.uncover(c);
+                    if(this.level == 0) throw new PuzzleNotSolvableException();
+                    this.level--;
+                    descend = false;
+                } else {
+                    this.levelNode[this.level] = n;
+                    this.select(n);
+                    this.level++;
+                    descend = true;
+                }
+            }
+        } finally {
+            this.iter = iter;
+        }
+    }
+
+    /**
+     * Returns whether a row above the given node in the given position column places an equal cube the same way.
+     * Equal cubes only repeat the same subtree, so just the first of them needs to be tried.
+     */
+    private boolean isTried(int c, int node) {
+        int row = this.rowOf[node];
+        if(!this.rowRepeats[row]) return false;
+        for (int i = this.down[c]; i != node; i = this.down[i]) {
+            if(this.rowPacked[this.rowOf[i]] == this.rowPacked[row]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the column to continue with: Any column without rows, then any column with a single row, otherwise the position next to the most filled positions
+     * with the fewest rows left. If nothing is filled yet, the smallest column, which has to be a position when enumerating.
+     */
+    private int smallestColumn() {
+        int positions = this.filled.length;
+        int best = ROOT, smallest = ROOT, forced = ROOT;
+        long bestKey = Long.MAX_VALUE;
+        for (int c = this.right[ROOT]; c != ROOT; c = this.right[c]) {
+            if(this.size[c] == 0) return c;
+            if(this.size[c] == 1 && forced == ROOT) forced = c;
+            if((smallest == ROOT || this.size[c] < this.size[smallest]) && (c <= positions || this.consumer == null)) smallest = c;
+            if(c > positions || this.filledNeighbors[c - 1] == 0) continue;
+
+            long key = ((long) (6 - this.filledNeighbors[c - 1]) << 32) + this.size[c];
+            if(key < bestKey) {
+                bestKey = key;
+                best = c;
+            }
+        }
+        if(forced != ROOT) return forced;
+        return best != ROOT ? best : smallest;
+    }
+
+    /**
+     * Chooses the row of the given node: Covers its other column and hides all rows of empty neighbors that don't match it.
+     */
+    private void select(int node) {
+        for (int j = this.right[node]; j != node; j = this.right[j]) {
+            this.cover(this.column[j]);
+        }
+
+        int row = this.rowOf[node], p = this.rowPosition[row];
+        ICube cube = this.rowCube[row];
+        this.levelHidden[this.level] = this.hiddenSize;
+        this.filled[p] = true;
+        for (int side = 0; side < 6; side++) {
+            int neighbor = this.neighbors[p * 6 + side];
+            if(neighbor < 0) continue;
+            this.filledNeighbors[neighbor]++;
+            if(this.filled[neighbor]) continue;
+
+            byte needed = cube.getMatchingTriangle(side);
+            int opposite = ICube.Side.getOpposite(side);
+            int col = 1 + neighbor;
+            for (int i = this.down[col]; i != col; i = this.down[i]) {
+                int other = this.rowOf[i];
+                if(PackedTriangles.get(this.rowCube[other].getPackedTriangles(), opposite) != needed) this.hide(i);
+            }
+        }
+    }
+
+    /**
+     * Reverts {@link #select(int)}
+     */
+    private void unselect(int node) {
+        int row = this.rowOf[node], p = this.rowPosition[row];
+        this.filled[p] = false;
+        for (int side = 0; side < 6; side++) {
+            int neighbor = this.neighbors[p * 6 + side];
+            if(neighbor >= 0) this.filledNeighbors[neighbor]--;
+        }
+        while(this.hiddenSize > this.levelHidden[this.level]) {
+            this.unhide(this.hidden[--this.hiddenSize]);
+        }
+
+        for (int j = this.left[node]; j != node; j = this.left[j]) {
+            this.uncover(this.column[j]);
+        }
+    }
+
+    /**
+     * Removes the row of the given node from all its columns
+     */
+    private void hide(int node) {
+        int j = node;
+        do {
+            this.up[this.down[j]] = this.up[j];
+            this.down[this.up[j]] = this.down[j];
+            this.size[this.column[j]]--;
+            j = this.right[j];
+        } while(j != node);
+        this.hidden[this.hiddenSize++] = node;
+    }
+
+    private void unhide(int node) {
+        int j = node;
+        do {
+            j = this.left[j];
+            this.size[this.column[j]]++;
+            this.up[this.down[j]] = j;
+            this.down[this.up[j]] = j;
+        } while(j != node);
+    }
+
+    private void cover(int c) {
+        this.right[this.left[c]] = this.right[c];
+        this.left[this.right[c]] = this.left[c];
+        for (int i = this.down[c]; i != c; i = this.down[i]) {
+            for (int j = this.right[i]; j != i; j = this.right[j]) {
+                this.up[this.down[j]] = this.up[j];
+                this.down[this.up[j]] = this.down[j];
+                this.size[this.column[j]]--;
+            }
+        }
+    }
+
+    private void uncover(int c) {
+        for (int i = this.up[c]; i != c; i = this.up[i]) {
+            for (int j = this.left[i]; j != i; j = this.left[j]) {
+                this.size[this.column[j]]++;
+                this.up[this.down[j]] = j;
+                this.down[this.up[j]] = j;
+            }
+        }
+        this.right[this.left[c]] = c;
+        this.left[this.right[c]] = c;
+    }
+
+    private IPuzzleSolution toSolution() {
+        DynamicPuzzleSolution solution = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
+        for (int l = 0; l < this.level; l++) {
+            int row = this.rowOf[this.levelNode[l]], p = this.rowPosition[row];
+            solution.set(p % dimensionX, p / dimensionX % dimensionY, p / (dimensionX * dimensionY), this.rowCube[row]);
+        }
+        return solution;
+    }
+
+    @Override
+    public String getCurrentStatus() {
+        return String.format("[%d] Level %d, deepest %d/%d", this.iter, this.level, this.maxLevel, this.levelColumn.length);
+    }
+
+    @Override
+    public IPuzzleSolver deepClone() {
+        throw new UnsupportedOperationException();
+    }
+}
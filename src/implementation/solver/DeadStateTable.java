@@ -0,0 +1,59 @@
+package implementation.solver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers partial solutions that have been searched completely without finding a solution, by their {@link FrontierHash}.
+ * If a solver reaches the same frontier again on another path, it can skip it right away.
+ * <br>
+ * The table has a fixed size and forgets old entries when new ones need their slot, so it is only a cache: A state that is
+ * not found may still be dead. Lock-free and shared by all solvers working on the same puzzle.
+ */
+public final class DeadStateTable {
+    /** Number of entries {@link #DeadStateTable()} creates: 8 MiB */
+    public static final int DEFAULT_BITS = 20;
+    /** Number of cubes set while searching a state, below which it isn't worth recording */
+    public static final int MIN_WORK = 64;
+    /** Stored instead of 0, which marks empty slots */
+    private static final long ZERO = 1;
+
+    private final AtomicLongArray keys;
+    private final int mask;
+
+    public DeadStateTable() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * @param bits The table holds 2^bits entries
+     */
+    public DeadStateTable(int bits) {
+        this.keys = new AtomicLongArray(1 << bits);
+        this.mask = (1 << bits) - 2; // Entries come in pairs
+    }
+
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & this.mask;
+    }
+
+    /**
+     * Returns whether the state with the given hash has been recorded as dead.
+     */
+    public boolean contains(long hash) {
+        long key = hash == 0 ? ZERO : hash;
+        int i = this.index(key);
+        return this.keys.getOpaque(i) == key || this.keys.getOpaque(i + 1) == key;
+    }
+
+    /**
+     * Records the state with the given hash as dead. Each pair of slots keeps the two newest entries.
+     */
+    public void add(long hash) {
+        long key = hash == 0 ? ZERO : hash;
+        int i = this.index(key);
+        long newest = this.keys.getOpaque(i);
+        if(newest == key) return;
+        this.keys.setOpaque(i + 1, newest);
+        this.keys.setOpaque(i, key);
+    }
+}
@@ -0,0 +1,146 @@
+package implementation.solver;
+
+import abstractions.cube.ICube;
+import implementation.cube.PackedTriangles;
+
+import java.util.Arrays;
+
+/**
+ * Incremental 64-bit hash of the part of a partial solution that matters for the rest of the search: Which positions are set,
+ * which triangles the set cubes show towards empty positions and which cubes are used, counting cubes with the same triangles
+ * in any orientation as the same. Two partial solutions with the same hash can be completed by exactly the same cubes
+ * (barring collisions), no matter how the cubes inside the set area are arranged.
+ * <br>
+ * Positions and faces are hashed Zobrist-style with XOR, the used cubes by adding up their hashes, since several cubes may
+ * have the same triangles. Not synchronized.
+ */
+final class FrontierHash {
+    /* Flipped into the hash while the banned cube is free, see ban() */
+    private static final long BANNED_FREE = 0x9E3779B97F4A7C15L;
+
+    private final int dimensionX, dimensionY;
+    /* Immutable. Neighboring positions of each position, indexed by position * 6 + side, -1 if there is none */
+    private final int[] neighbors;
+    /* Mutable. Packed triangles of the cube on each position (see position()), -1 if there is none */
+    private final int[] packed;
+    /* Hash of each cube, indexed by its id. 0 until it's needed for the first time */
+    private final long[] cubeHashes;
+    /* Mutable */
+    private long positionHash = 0, faceHash = 0, cubeSum = 0;
+    /* Id of the cube that is banned from some positions, or -1. Set once by ban() */
+    private int bannedId = -1;
+    /* Mutable. Whether the banned cube is set */
+    private boolean bannedSet = false;
+
+    FrontierHash(int dimensionX, int dimensionY, int dimensionZ) {
+        this.dimensionX = dimensionX;
+        this.dimensionY = dimensionY;
+        int positions = dimensionX * dimensionY * dimensionZ;
+        this.neighbors = new int[positions * 6];
+        for (int z = 0; z < dimensionZ; z++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int x = 0; x < dimensionX; x++) {
+                    for (ICube.Side s : ICube.Side.getValues()) {
+                        int x2 = x + s.x, y2 = y + s.y, z2 = z + s.z;
+                        boolean valid = x2 >= 0 && x2 < dimensionX && y2 >= 0 && y2 < dimensionY && z2 >= 0 && z2 < dimensionZ;
+                        this.neighbors[position(x, y, z) * 6 + s.ordinal()] = valid ? position(x2, y2, z2) : -1;
+                    }
+                }
+            }
+        }
+        this.packed = new int[positions];
+        Arrays.fill(this.packed, -1);
+        this.cubeHashes = new long[positions + 1];
+    }
+
+    private int position(int x, int y, int z) {
+        return x + dimensionX * (y + dimensionY * z);
+    }
+
+    /**
+     * Records that the solver keeps the cube with the given id off some of the positions, so it isn't interchangeable with equal
+     * cubes anymore: While it is free, its class can't go to those positions, while it could if an equal cube was free instead.
+     * Such states get a hash of their own. Once the cube is set, the ban doesn't matter and the hash is the same as without it,
+     * so the states are still shared with solvers that don't ban it.
+     */
+    void ban(int id) {
+        this.bannedId = id;
+    }
+
+    /**
+     * Returns the current hash.
+     */
+    long get() {
+        long hash = this.positionHash ^ this.faceHash ^ mix(this.cubeSum);
+        return this.bannedId >= 0 && !this.bannedSet ? hash ^ BANNED_FREE : hash;
+    }
+
+    /**
+     * Records that the given cube has been set on the given empty position.
+     */
+    void set(int x, int y, int z, ICube cube) {
+        int p = position(x, y, z), packed = cube.getPackedTriangles();
+        this.packed[p] = packed;
+        this.toggle(p, packed);
+        this.cubeSum += this.cubeHash(cube);
+        if(cube.getIdentifier() == this.bannedId) this.bannedSet = true;
+    }
+
+    /**
+     * Records that the given cube has been removed from the given position again.
+     */
+    void unset(int x, int y, int z, ICube cube) {
+        int p = position(x, y, z);
+        this.toggle(p, this.packed[p]);
+        this.packed[p] = -1;
+        this.cubeSum -= this.cubeHash(cube);
+        if(cube.getIdentifier() == this.bannedId) this.bannedSet = false;
+    }
+
+    /**
+     * Flips the given position and its faces: Its faces towards empty neighbors are shown, while the faces of set neighbors
+     * towards it are hidden. Both are undone by flipping again.
+     */
+    private void toggle(int p, int packed) {
+        this.positionHash ^= mix(p + 0x5851F42D4C957F2DL);
+        for (int side = 0; side < 6; side++) {
+            int q = this.neighbors[p * 6 + side];
+            if(q < 0) continue;
+            if(this.packed[q] == -1) {
+                this.faceHash ^= faceHash(p, side, PackedTriangles.get(packed, side));
+            } else {
+                int opposite = ICube.Side.getOpposite(side);
+                this.faceHash ^= faceHash(q, opposite, PackedTriangles.get(this.packed[q], opposite));
+            }
+        }
+    }
+
+    private static long faceHash(int position, int side, int triangle) {
+        return mix(((long) position * 6 + side) * 8 + triangle);
+    }
+
+    /**
+     * Returns the hash of the given cube, which is the same for all cubes with the same triangles in some orientation.
+     */
+    private long cubeHash(ICube cube) {
+        int id = cube.getIdentifier();
+        long hash = this.cubeHashes[id];
+        if(hash == 0) {
+            int min = Integer.MAX_VALUE;
+            for (int o = 0; o < 24; o++) {
+                min = Math.min(min, cube.getPackedTriangles(o));
+            }
+            hash = this.cubeHashes[id] = mix(min ^ 0x2545F4914F6CDD1DL) | 1;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads the bits of the given value over the whole hash.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,273 @@
+package implementation.solver;
+
+import abstractions.Coordinate;
+import abstractions.IPuzzleSolution;
+import abstractions.cube.CubeType;
+import abstractions.cube.ICube;
+import abstractions.cube.ICubeSorter;
+import implementation.cube.sorter.CubeSorterFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Searches the shared tree of {@link TreeSolver}s on a {@link ForkJoinPool}. Each task explores the subtree below one node,
+ * and while there are idle workers, it hands the untouched siblings of its current node to the pool as new tasks,
+ * so idle workers steal whole subtrees from busy ones. Every worker thread uses its own solver.
+ */
+public final class ParallelTreeSearch {
+    private final ForkJoinPool pool;
+    /** The shared tree, its root populated by the first solver */
+    private final TreeNodePool tree;
+    /** Solver of each worker thread */
+    private final ThreadLocal<TreeSolver> solvers;
+    /** All solvers created so far, for logging */
+    private final Queue<TreeSolver> allSolvers = new ConcurrentLinkedQueue<>();
+    /** Number of tasks that have been submitted, but haven't finished yet */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** Completed with the solver that found a solution, or with null if there is none */
+    private final CompletableFuture<TreeSolver> result = new CompletableFuture<>();
+    /** Set once the search is over, polled by all workers */
+    private final StopToken stop = new StopToken();
+    /** Set if a solver ran out of its budget, so the search didn't cover the whole tree */
+    private volatile boolean cutOff = false;
+    /** Number of cubes each worker may set, see {@link #setBudget(long)} */
+    private long budgetPerSolver = Long.MAX_VALUE;
+    private final int parallelism;
+    /** Whether the workers go on after a solution to find all of them, see {@link #enumerate} */
+    private final boolean allSolutions;
+    /** Number of solutions reported so far, see {@link #enumerate} */
+    private final LongAdder solutions = new LongAdder();
+    /** Set by {@link #enumerate} before the search starts. Receives the solutions, or null if they are only counted */
+    private Consumer<IPuzzleSolution> consumer = null;
+    /** Set by {@link #enumerate} before the search starts. Whether only one solution of each group of rotations is reported */
+    private boolean collapseSymmetric = false;
+
+    /**
+     * @param splitDepth Number of cubes that are placed through the shared tree. Below, each worker searches its subtree on its own.
+     *                   The tree also stops growing once it would use more than a quarter of the maximum heap size.
+     * @param order Order in which the candidates of each position are tried
+     * @param seed Seed of the shuffles for {@link CandidateOrder#Random}. Each worker derives its own seed from it
+     * @param deadStates Table of dead states shared by all workers, or null to not track them
+     */
+    public ParallelTreeSearch(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords, int parallelism, int splitDepth, CandidateOrder order, long seed, DeadStateTable deadStates) {
+        this(dimensionX, dimensionY, dimensionZ, cubeMap, coords, parallelism, splitDepth, order, seed, deadStates, false);
+    }
+
+    /**
+     * Creates a search for all solutions, see {@link #enumerate}. Dead states aren't tracked, since a subtree that has been searched
+     * completely isn't dead if it contains solutions.
+     */
+    public ParallelTreeSearch(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords, int parallelism, int splitDepth) {
+        this(dimensionX, dimensionY, dimensionZ, cubeMap, coords, parallelism, splitDepth, CandidateOrder.Sorter, 0L, null, true);
+    }
+
+    private ParallelTreeSearch(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords, int parallelism, int splitDepth, CandidateOrder order, long seed, DeadStateTable deadStates, boolean allSolutions) {
+        this.allSolutions = allSolutions;
+        // All solvers share one query index per cube type
+        EnumMap<CubeType, ICubeSorter> sorterMap = CubeSorterFactory.from(cubeMap);
+        long capacity = Runtime.getRuntime().maxMemory() / 4 / TreeNodePool.BYTES_PER_NODE;
+        this.tree = new TreeNodePool(dimensionX * dimensionY * dimensionZ, capacity);
+        TreeSolver first = new TreeSolver(dimensionX, dimensionY, dimensionZ, sorterMap, coords, this.tree, splitDepth, order, seed, deadStates, allSolutions);
+        first.prepare();
+        this.allSolvers.add(first);
+
+        AtomicInteger workers = new AtomicInteger();
+        this.solvers = ThreadLocal.withInitial(() -> {
+            long workerSeed = seed + workers.incrementAndGet();
+            TreeSolver solver = new TreeSolver(dimensionX, dimensionY, dimensionZ, sorterMap, coords, this.tree, splitDepth, order, workerSeed, deadStates, allSolutions);
+            solver.setBudget(this.budgetPerSolver);
+            this.allSolvers.add(solver);
+            return solver;
+        });
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Limits the search to the given number of cubes set, split evenly between the workers. A worker that has used up its share
+     * cuts the whole search off, see {@link #isCutOff()}. Has to be called before the search is started.
+     */
+    public void setBudget(long budget) {
+        this.budgetPerSolver = Math.max(1, budget / this.parallelism);
+    }
+
+    /**
+     * Returns whether the search has been cut off because a worker ran out of budget. If so, a result of null doesn't mean there is no solution.
+     */
+    public boolean isCutOff() {
+        return this.cutOff;
+    }
+
+    /**
+     * Runs the search. Returns the solution, or null if there is none.
+     */
+    public IPuzzleSolution solve() throws InterruptedException {
+        this.pending.incrementAndGet();
+        this.pool.execute(new SubtreeTask(TreeNodePool.ROOT, -1));
+        try {
+            return this.result.get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            this.stop.stop();
+            this.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the search. Returns the solution, or null if there is none.
+     * @throws TimeoutException If no result was found in time
+     */
+    public IPuzzleSolution solve(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
+        this.pending.incrementAndGet();
+        this.pool.execute(new SubtreeTask(TreeNodePool.ROOT, -1));
+        try {
+            return this.result.get(timeout, unit);
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            this.stop.stop();
+            this.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches the whole tree and hands every solution to the given consumer as soon as it is found. Returns the number of solutions.
+     * Solutions that only differ by equal cubes being swapped count once, like everywhere else.
+     * Only works on a search created for it, see {@link #ParallelTreeSearch(int, int, int, EnumMap, Coordinate[], int, int)}, and only once.
+     * @param consumer Receives a copy of each solution, see {@link TreeSolver#snapshot()}. Called by all workers at the same time,
+     *                 so it has to be thread-safe. May be null if the solutions are only counted
+     * @param collapseSymmetric Whether solutions that are rotations of each other count once, see {@link PuzzleSymmetry#isLeader(int[])}
+     * @throws InterruptedException If the calling thread got interrupted, which stops the search
+     */
+    public long enumerate(Consumer<IPuzzleSolution> consumer, boolean collapseSymmetric) throws InterruptedException {
+        if(!this.allSolutions) throw new IllegalStateException("This search stops at the first solution");
+        // Published to the workers by starting the first task
+        this.consumer = consumer;
+        this.collapseSymmetric = collapseSymmetric;
+
+        this.pending.incrementAndGet();
+        this.pool.execute(new SubtreeTask(TreeNodePool.ROOT, -1));
+        try {
+            this.result.get();
+        } catch (ExecutionException e) {
+            // Most likely thrown by the consumer
+            if(e.getCause() instanceof RuntimeException r) throw r;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            this.stop.stop();
+            this.pool.shutdownNow();
+        }
+        return this.solutions.sum();
+    }
+
+    /**
+     * Counts the solution the given solver is on and hands a copy of it to the consumer, see {@link #enumerate}.
+     * May only be called from within a task.
+     */
+    void report(TreeSolver solver) {
+        if(this.collapseSymmetric && !solver.isSymmetryLeader()) return;
+        this.solutions.increment();
+        if(this.consumer != null) this.consumer.accept(solver.snapshot());
+    }
+
+    /**
+     * Returns the number of solutions reported so far, see {@link #enumerate}. May be called from another thread.
+     */
+    public long getSolutionCount() {
+        return this.solutions.sum();
+    }
+
+    /**
+     * Forks the untouched children of the given node as long as there are no surplus tasks queued, so idle workers have something to steal.
+     * May only be called from within a task.
+     */
+    void split(int node, int height) {
+        while (ForkJoinTask.getSurplusQueuedTaskCount() <= 0) {
+            int child = this.tree.claimEmpty(node);
+            if(child == TreeNodePool.NONE) return;
+            this.pending.incrementAndGet();
+            new SubtreeTask(child, height + 1).fork();
+        }
+    }
+
+    /**
+     * Stops the search because a worker has used up its budget. The result is null, unless a solution has been found already.
+     */
+    void cutOff() {
+        this.cutOff = true;
+        this.stop.stop();
+        this.result.complete(null);
+    }
+
+    /**
+     * Returns whether the search is over, either because a solution has been found or because it was canceled.
+     * Cheap, but workers only need to poll it every {@link StopToken#POLL_INTERVAL} iterations.
+     */
+    boolean isStopped() {
+        return this.stop.isStopped();
+    }
+
+    /**
+     * Waits up to a second for the workers to exit after the search is over, then prints how long each of them took to stop.
+     */
+    public void printStopDelays() {
+        try {
+            this.pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.stop.printDelays();
+    }
+
+    /**
+     * Returns the status of all solvers
+     */
+    public List<String> getStatus() {
+        List<String> status = new ArrayList<>();
+        for (TreeSolver solver : this.allSolvers) {
+            status.add(solver.getCurrentStatus());
+        }
+        return status;
+    }
+
+    /**
+     * Explores the subtree below a node, which has been claimed for this task.
+     */
+    private final class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int node, height;
+
+        private SubtreeTask(int node, int height) {
+            this.node = node;
+            this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if(stop.isStopped()) return;
+                TreeSolver solver = solvers.get();
+                if(solver.explore(this.node, this.height, ParallelTreeSearch.this)) {
+                    stop.stop();
+                    result.complete(solver);
+                }
+            } catch (RuntimeException e) {
+                stop.stop();
+                result.completeExceptionally(e);
+            } finally {
+                if(stop.isStopped()) stop.acknowledge();
+                if(pending.decrementAndGet() == 0) result.complete(null); // Nothing left, so there is no solution
+            }
+        }
+    }
+}
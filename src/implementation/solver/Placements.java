@@ -0,0 +1,108 @@
+package implementation.solver;
+
+import abstractions.Coordinate;
+import abstractions.Orientation;
+import abstractions.cube.ICube;
+import abstractions.cube.ICubeFilter;
+import implementation.solution.DynamicPuzzleSolution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All ways to place a cube on a position: Every distinct orientation of every cube on every position it fits into, given the
+ * borders of the puzzle. Ordered by position, then by cube. Rotated solutions are skipped the same way as in the other solvers
+ * (see {@link PuzzleSymmetry}): The corner cube with the lowest id is fixed to (0, 0, 0), or banned from all corners that can't be
+ * rotated onto a representative. Unless all solutions are needed, in which case rotated solutions are solutions of their own.
+ */
+final class Placements {
+    /** Position (see {@link #position(int, int, int)}) and index of the cube of each placement */
+    final int[] position, cube;
+    /** Oriented cube of each placement */
+    final ICube[] oriented;
+    final int dimensionX, dimensionY;
+
+    /**
+     * @param allSolutions Whether to keep the placements that only lead to rotations of other solutions
+     */
+    Placements(int dimensionX, int dimensionY, int dimensionZ, ICube[] cubes, boolean allSolutions) {
+        this.dimensionX = dimensionX;
+        this.dimensionY = dimensionY;
+        DynamicPuzzleSolution borders = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
+        PuzzleSymmetry symmetry = new PuzzleSymmetry(dimensionX, dimensionY, dimensionZ);
+        Coordinate first = new Coordinate(0, 0, 0);
+
+        int firstCorner = -1;
+        for (int i = 0; i < cubes.length && firstCorner < 0; i++) {
+            if(!cubes[i].match(borders.getFilterAt(0, 0, 0)).isEmpty()) firstCorner = i;
+        }
+        boolean fixFirstCorner = !allSolutions && symmetry.isTransitiveOnCorners();
+        List<Coordinate> corners = symmetry.corners(), representatives = symmetry.cornerRepresentatives();
+
+        List<Integer> positionOf = new ArrayList<>();
+        List<Integer> cubeOf = new ArrayList<>();
+        List<ICube> orientedCubes = new ArrayList<>();
+        int[] distinct = new int[24];
+        for (int z = 0; z < dimensionZ; z++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int x = 0; x < dimensionX; x++) {
+                    ICubeFilter filter = borders.getFilterAt(x, y, z);
+                    Coordinate c = new Coordinate(x, y, z);
+                    boolean isFirst = c.equals(first);
+                    boolean banned = !allSolutions && !fixFirstCorner && corners.contains(c) && !representatives.contains(c);
+                    for (int i = 0; i < cubes.length; i++) {
+                        if(isFirst && fixFirstCorner && i != firstCorner) continue;
+                        if(banned && i == firstCorner) continue;
+
+                        // Orientations with the same triangles are the same placement
+                        List<ICube> oriented = new ArrayList<>();
+                        int numDistinct = 0;
+                        outer:
+                        for (int o = 0; o < 24; o++) {
+                            int packed = cubes[i].getPackedTriangles(o);
+                            if(!filter.match(packed)) continue;
+                            for (int d = 0; d < numDistinct; d++) {
+                                if(distinct[d] == packed) continue outer;
+                            }
+                            distinct[numDistinct++] = packed;
+                            ICube cube = cubes[i].cloneCube();
+                            cube.setOrientation(Orientation.get(o));
+                            oriented.add(cube);
+                        }
+                        if(isFirst && fixFirstCorner) oriented = List.of(symmetry.canonical(c, oriented.toArray(ICube[]::new)));
+
+                        for (ICube cube : oriented) {
+                            positionOf.add(position(x, y, z));
+                            cubeOf.add(i);
+                            orientedCubes.add(cube);
+                        }
+                    }
+                }
+            }
+        }
+
+        this.position = positionOf.stream().mapToInt(Integer::intValue).toArray();
+        this.cube = cubeOf.stream().mapToInt(Integer::intValue).toArray();
+        this.oriented = orientedCubes.toArray(ICube[]::new);
+    }
+
+    int size() {
+        return this.oriented.length;
+    }
+
+    int position(int x, int y, int z) {
+        return x + this.dimensionX * (y + this.dimensionY * z);
+    }
+
+    int x(int position) {
+        return position % this.dimensionX;
+    }
+
+    int y(int position) {
+        return position / this.dimensionX % this.dimensionY;
+    }
+
+    int z(int position) {
+        return position / (this.dimensionX * this.dimensionY);
+    }
+}
@@ -0,0 +1,197 @@
+package implementation.solver;
+
+import abstractions.Coordinate;
+import abstractions.Orientation;
+import abstractions.cube.ICube;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Rotational symmetry of a puzzle. Any solution rotated as a whole by a rotation that maps the puzzle onto itself is a solution, too.
+ * So the solvers only need to look for one solution of each such group, which cuts the search space by up to the number of rotations (24 for cubes).
+ * <br>
+ * Rotations are expressed as {@link Orientation}s: A rotation moves side j of a cube to side o.side[j], and every position of the
+ * puzzle is moved the same way around the center of the puzzle.
+ */
+public final class PuzzleSymmetry {
+    /* Immutable dimensions of the puzzle */
+    public final int dimensionX, dimensionY, dimensionZ;
+    /** Immutable. All rotations mapping the puzzle onto itself, including the identity */
+    private final Orientation[] group;
+    /** Immutable. For each rotation of the group, the index of the position each position is moved away from, see {@link #index(Coordinate)} */
+    private final int[][] origin;
+
+    public PuzzleSymmetry(int dimensionX, int dimensionY, int dimensionZ) {
+        this.dimensionX = dimensionX;
+        this.dimensionY = dimensionY;
+        this.dimensionZ = dimensionZ;
+
+        int[] dimensions = {dimensionX, dimensionY, dimensionZ};
+        this.group = Orientation.stream().filter(o -> {
+            // Each axis has to end up on an axis of the same length
+            for (int axis = 0; axis < 3; axis++) {
+                if(dimensions[axis] != dimensions[axisOf(o.side[sideOf(axis)])]) return false;
+            }
+            return true;
+        }).toArray(Orientation[]::new);
+
+        this.origin = new int[this.group.length][dimensionX * dimensionY * dimensionZ];
+        for (int g = 0; g < this.group.length; g++) {
+            for (int x = 0; x < dimensionX; x++) {
+                for (int y = 0; y < dimensionY; y++) {
+                    for (int z = 0; z < dimensionZ; z++) {
+                        Coordinate c = new Coordinate(x, y, z);
+                        this.origin[g][this.index(this.rotate(this.group[g], c))] = this.index(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the given position in a solution stored as one array, x changing fastest.
+     */
+    public int index(Coordinate c) {
+        return c.x() + dimensionX * (c.y() + dimensionY * c.z());
+    }
+
+    /**
+     * Returns the side pointing in positive direction of the given axis (0 = x, 1 = y, 2 = z)
+     */
+    private static int sideOf(int axis) {
+        return switch (axis) {
+            case 0 -> ICube.Side.Front.ordinal();
+            case 1 -> ICube.Side.Right.ordinal();
+            default -> ICube.Side.Up.ordinal();
+        };
+    }
+
+    /**
+     * Returns the axis (0 = x, 1 = y, 2 = z) the given side lies on
+     */
+    private static int axisOf(int side) {
+        ICube.Side s = ICube.Side.valueOf(side);
+        if(s.x != 0) return 0;
+        if(s.y != 0) return 1;
+        return 2;
+    }
+
+    /**
+     * Returns all rotations mapping the puzzle onto itself. DO NOT MODIFY THE RETURNED ARRAY
+     */
+    public Orientation[] getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Returns the position the given position is moved to by the given rotation.
+     */
+    public Coordinate rotate(Orientation rotation, Coordinate c) {
+        // Doubled distance from the center, so it stays integral
+        int[] from = {2 * c.x() - (dimensionX - 1), 2 * c.y() - (dimensionY - 1), 2 * c.z() - (dimensionZ - 1)};
+        int[] to = new int[3];
+        for (int axis = 0; axis < 3; axis++) {
+            ICube.Side s = ICube.Side.valueOf(rotation.side[sideOf(axis)]);
+            to[0] += from[axis] * s.x;
+            to[1] += from[axis] * s.y;
+            to[2] += from[axis] * s.z;
+        }
+        return new Coordinate((to[0] + dimensionX - 1) / 2, (to[1] + dimensionY - 1) / 2, (to[2] + dimensionZ - 1) / 2);
+    }
+
+    /**
+     * Returns all positions the given position can be moved to, starting with the position itself.
+     */
+    public List<Coordinate> orbit(Coordinate c) {
+        LinkedHashSet<Coordinate> orbit = new LinkedHashSet<>();
+        for (Orientation rotation : this.group) {
+            orbit.add(this.rotate(rotation, c));
+        }
+        return new ArrayList<>(orbit);
+    }
+
+    /**
+     * Returns all rotations that leave the given position where it is.
+     */
+    public Orientation[] stabilizer(Coordinate c) {
+        return Arrays.stream(this.group).filter(o -> this.rotate(o, c).equals(c)).toArray(Orientation[]::new);
+    }
+
+    /**
+     * Returns all distinct corners of the puzzle, starting with (0, 0, 0).
+     */
+    public List<Coordinate> corners() {
+        LinkedHashSet<Coordinate> corners = new LinkedHashSet<>();
+        for (int x : new int[]{0, dimensionX - 1}) {
+            for (int y : new int[]{0, dimensionY - 1}) {
+                for (int z : new int[]{0, dimensionZ - 1}) {
+                    corners.add(new Coordinate(x, y, z));
+                }
+            }
+        }
+        return new ArrayList<>(corners);
+    }
+
+    /**
+     * Returns one corner of each group of corners that can be moved onto each other, starting with (0, 0, 0).
+     * If there is only one, any cube can be fixed to (0, 0, 0).
+     */
+    public List<Coordinate> cornerRepresentatives() {
+        List<Coordinate> representatives = new ArrayList<>();
+        LinkedHashSet<Coordinate> covered = new LinkedHashSet<>();
+        for (Coordinate corner : this.corners()) {
+            if(covered.contains(corner)) continue;
+            representatives.add(corner);
+            covered.addAll(this.orbit(corner));
+        }
+        return representatives;
+    }
+
+    /**
+     * Returns whether every corner can be moved onto every other one.
+     */
+    public boolean isTransitiveOnCorners() {
+        return this.cornerRepresentatives().size() == 1;
+    }
+
+    /**
+     * Drops all candidates for the given position that are just a rotation of another candidate by a rotation keeping
+     * this position in place. Of each such group, the candidate with the lowest packed triangles is kept.
+     * Only use this for the first position the solver fills, and only if the candidates all belong to the same cube.
+     */
+    public ICube[] canonical(Coordinate c, ICube[] candidates) {
+        Orientation[] stabilizer = this.stabilizer(c);
+
+        return Arrays.stream(candidates).filter(cube -> {
+            int packed = cube.getPackedTriangles();
+            for (Orientation rotation : stabilizer) {
+                if(rotation.rotate(packed) < packed) return false;
+            }
+            return true;
+        }).toArray(ICube[]::new);
+    }
+
+    /**
+     * Returns whether none of the rotations of the given solution comes before it, comparing the packed triangles of the positions
+     * one after another (see {@link #index(Coordinate)}). Equal cubes are indistinguishable anyway, so of each group of solutions that
+     * are rotations of each other exactly one passes. Used to count such groups instead of solutions.
+     * @param packed Packed triangles of the cube on each position, indexed by {@link #index(Coordinate)}
+     */
+    public boolean isLeader(int[] packed) {
+        for (int g = 0; g < this.group.length; g++) {
+            int[] origin = this.origin[g];
+            Orientation rotation = this.group[g];
+            for (int i = 0; i < packed.length; i++) {
+                int rotated = rotation.rotate(packed[origin[i]]);
+                if(rotated != packed[i]) {
+                    if(rotated < packed[i]) return false;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package implementation.solver;
+
+/**
+ * Number of cubes a randomized search may set before it gives up and starts over with another seed, see {@link RestartSolverContainer}.
+ * The budgets grow without bound, so a puzzle is always searched completely eventually.
+ */
+public abstract class RestartPolicy {
+    /** Cubes set per unit of a budget */
+    protected final long unit;
+
+    private RestartPolicy(long unit) {
+        if(unit <= 0) throw new IllegalArgumentException("Unit has to be positive");
+        this.unit = unit;
+    }
+
+    /**
+     * Returns the budget of the given run, counting from 0.
+     */
+    public abstract long budget(int run);
+
+    /**
+     * Budgets follow the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ... times the unit. Within a constant factor of the
+     * best fixed budget without knowing anything about the distribution of the runtimes.
+     */
+    public static RestartPolicy luby(long unit) {
+        return new RestartPolicy(unit) {
+            @Override
+            public long budget(int run) {
+                return saturatingMultiply(this.unit, lubySequence(run + 1));
+            }
+
+            @Override
+            public String toString() {
+                return "Luby(" + this.unit + ")";
+            }
+        };
+    }
+
+    /**
+     * Budgets grow by the given factor with each run, starting at the unit. The factor has to be greater than 1, or else the
+     * budgets wouldn't grow and a puzzle harder than the unit would never be searched completely.
+     */
+    public static RestartPolicy geometric(long unit, double factor) {
+        if(!(factor > 1)) throw new IllegalArgumentException("Factor has to be greater than 1");
+        return new RestartPolicy(unit) {
+            @Override
+            public long budget(int run) {
+                double budget = this.unit * Math.pow(factor, run);
+                return budget >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) budget;
+            }
+
+            @Override
+            public String toString() {
+                return "Geometric(" + this.unit + ", " + factor + ")";
+            }
+        };
+    }
+
+    /**
+     * Returns the i-th element of the Luby sequence, counting from 1.
+     */
+    static long lubySequence(int i) {
+        // Find the finished subsequence of length 2^k - 1 that contains i
+        int k = 1;
+        while((1L << k) - 1 < i) k++;
+        while(i != (1L << k) - 1) {
+            i -= (int) (1L << (k - 1)) - 1;
+            k = 1;
+            while((1L << k) - 1 < i) k++;
+        }
+        return 1L << (k - 1);
+    }
+
+    private static long saturatingMultiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        return high != 0 || a * b < 0 ? Long.MAX_VALUE : a * b;
+    }
+}
@@ -0,0 +1,188 @@
+package implementation.solver;
+
+import abstractions.IPuzzleSolution;
+import abstractions.IPuzzleSolver;
+import abstractions.PuzzleNotSolvableException;
+import abstractions.cube.ICube;
+import implementation.Puzzle;
+import implementation.cube.PackedTriangles;
+import implementation.solution.DynamicPuzzleSolution;
+import implementation.solver.sat.CdclSolver;
+import implementation.solver.sat.CnfFormula;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates the puzzle into CNF and solves it with the built-in {@link CdclSolver}.
+ * <br>
+ * There is one variable for each of the {@link Placements}. Each position holds exactly one placement and each cube is used by exactly one.
+ * Adjacent faces are linked through one variable per face and triangle, which tells the triangle of the second position:
+ * A placement on the first position implies the triangle it needs, one on the second position the triangle it has,
+ * and at most one of them holds. Each face variable also implies that one of its placements is chosen on either side,
+ * so a triangle nobody can provide removes all placements needing it right away.
+ * <br>
+ * Learnt clauses remember why a part of the search failed, so unsolvable puzzles aren't searched over and over again
+ * the way backtracking does.
+ */
+public class SatSolver implements IPuzzleSolver {
+    /** Number of different triangles on a face */
+    private static final int TRIANGLES = 5;
+
+    /* Immutable */
+    public final int dimensionX, dimensionY, dimensionZ;
+    private final ICube[] cubes;
+
+    /* Immutable after prepare(). The placements, with variable i + 1 for placement i */
+    private Placements placements;
+    private CnfFormula formula;
+    private CdclSolver solver;
+
+    protected SatSolver(int dimensionX, int dimensionY, int dimensionZ, ICube[] cubes) {
+        this.dimensionX = dimensionX;
+        this.dimensionY = dimensionY;
+        this.dimensionZ = dimensionZ;
+        this.cubes = cubes;
+    }
+
+    /**
+     * Builds the formula.
+     * @throws PuzzleNotSolvableException If a position or cube has no placements at all
+     */
+    @Override
+    public void prepare() throws PuzzleNotSolvableException {
+        int positions = dimensionX * dimensionY * dimensionZ;
+        this.placements = new Placements(dimensionX, dimensionY, dimensionZ, this.cubes, false);
+        this.formula = new CnfFormula();
+
+        List<List<Integer>> atPosition = new ArrayList<>(), ofCube = new ArrayList<>();
+        for (int p = 0; p < positions; p++) atPosition.add(new ArrayList<>());
+        for (int i = 0; i < this.cubes.length; i++) ofCube.add(new ArrayList<>());
+        for (int r = 0; r < this.placements.size(); r++) {
+            int v = this.formula.newVariable();
+            atPosition.get(this.placements.position[r]).add(v);
+            ofCube.get(this.placements.cube[r]).add(v);
+        }
+
+        for (int p = 0; p < positions; p++) {
+            if(atPosition.get(p).isEmpty()) throw new PuzzleNotSolvableException("No cube fits position " + p);
+            this.formula.exactlyOne(toArray(atPosition.get(p)));
+        }
+        for (int i = 0; i < this.cubes.length; i++) {
+            if(ofCube.get(i).isEmpty()) throw new PuzzleNotSolvableException("Cube " + this.cubes[i].getIdentifier() + " fits nowhere");
+            this.formula.exactlyOne(toArray(ofCube.get(i)));
+        }
+
+        for (int p = 0; p < positions; p++) {
+            int x = this.placements.x(p), y = this.placements.y(p), z = this.placements.z(p);
+            for (ICube.Side s : ICube.Side.values()) {
+                int x2 = x + s.x, y2 = y + s.y, z2 = z + s.z;
+                if(x2 < 0 || x2 >= dimensionX || y2 < 0 || y2 >= dimensionY || z2 < 0 || z2 >= dimensionZ) continue;
+                int q = this.placements.position(x2, y2, z2);
+                if(q > p) this.linkFace(p, s.ordinal(), q, atPosition);
+            }
+        }
+
+        this.solver = new CdclSolver(this.formula);
+        // Trying a placement propagates a lot more than ruling one out, which is what the saved phase mostly ends up as
+        for (int r = 0; r < this.placements.size(); r++) {
+            this.solver.setPolarity(r + 1, true, true);
+        }
+        if(Puzzle.LOG) System.out.printf("CNF with %d variables and %d clauses\n", this.formula.getNumVariables(), this.formula.getClauses().size());
+    }
+
+    /**
+     * Adds the clauses for the face between position p and its neighbor q on the given side of p.
+     */
+    private void linkFace(int p, int side, int q, List<List<Integer>> atPosition) {
+        int opposite = ICube.Side.getOpposite(side);
+        int[] face = new int[TRIANGLES];
+        List<List<Integer>> needing = new ArrayList<>(), having = new ArrayList<>();
+        for (int t = 0; t < TRIANGLES; t++) {
+            face[t] = this.formula.newVariable();
+            needing.add(new ArrayList<>());
+            having.add(new ArrayList<>());
+        }
+
+        for (int v : atPosition.get(p)) {
+            byte needed = this.placements.oriented[v - 1].getMatchingTriangle(side);
+            this.formula.addClause(-v, face[needed]);
+            needing.get(needed).add(v);
+        }
+        for (int v : atPosition.get(q)) {
+            byte has = PackedTriangles.get(this.placements.oriented[v - 1].getPackedTriangles(), opposite);
+            this.formula.addClause(-v, face[has]);
+            having.get(has).add(v);
+        }
+
+        this.formula.atMostOne(face);
+        for (int t = 0; t < TRIANGLES; t++) {
+            this.formula.addClause(support(face[t], needing.get(t)));
+            this.formula.addClause(support(face[t], having.get(t)));
+        }
+    }
+
+    /**
+     * Returns the clause "face implies one of the given placements".
+     */
+    private static int[] support(int face, List<Integer> placements) {
+        int[] clause = new int[placements.size() + 1];
+        clause[0] = -face;
+        for (int i = 0; i < placements.size(); i++) {
+            clause[i + 1] = placements.get(i);
+        }
+        return clause;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Writes the formula in the DIMACS format. Variable i + 1 is the i-th placement, in the order of {@link Placements}.
+     * May only be called after {@link #prepare()}.
+     */
+    public void writeDimacs(Appendable out) throws IOException {
+        this.formula.writeDimacs(out);
+    }
+
+    @Override
+    public IPuzzleSolution solve() throws PuzzleNotSolvableException {
+        return this.toSolution(this.solver.solve(() -> false));
+    }
+
+    @Override
+    public IPuzzleSolution solveConcurrent() throws PuzzleNotSolvableException {
+        IPuzzleSolution solution = this.toSolution(this.solver.solve(() -> Thread.currentThread().isInterrupted()));
+        if(solution == null && Puzzle.LOG) System.out.println("Got interrupted, exiting!");
+        return solution;
+    }
+
+    /**
+     * Returns the solution of the model, or null if the solver got stopped.
+     * @throws PuzzleNotSolvableException If the formula is unsatisfiable
+     */
+    private IPuzzleSolution toSolution(Boolean result) throws PuzzleNotSolvableException {
+        if(result == null) return null;
+        if(!result) throw new PuzzleNotSolvableException();
+
+        DynamicPuzzleSolution solution = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
+        for (int r = 0; r < this.placements.size(); r++) {
+            if(!this.solver.isTrue(r + 1)) continue;
+            int p = this.placements.position[r];
+            solution.set(this.placements.x(p), this.placements.y(p), this.placements.z(p), this.placements.oriented[r]);
+        }
+        return solution;
+    }
+
+    @Override
+    public String getCurrentStatus() {
+        return this.solver == null ? "Not prepared" : this.solver.getStatus();
+    }
+
+    @Override
+    public IPuzzleSolver deepClone() {
+        throw new UnsupportedOperationException();
+    }
+}
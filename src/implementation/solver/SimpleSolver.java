@@ -1,12 +1,15 @@
 package implementation.solver;
 
+import abstractions.Coordinate;
 import abstractions.IPuzzleSolution;
 import abstractions.IPuzzleSolver;
 import abstractions.PuzzleNotSolvableException;
 import abstractions.cube.ICube;
+import abstractions.cube.ICubeFilter;
 import abstractions.cube.ICubeSorter;
 import implementation.FixedArrayStack;
 import implementation.Puzzle;
+import implementation.cube.CubeMask;
 import implementation.cube.sorter.CubeSorterFactory;
 import implementation.solution.DynamicPuzzleSolution;
 
@@ -19,12 +22,14 @@ public class SimpleSolver implements IPuzzleSolver {
 
     /* Mutable */
     private final DynamicPuzzleSolution solution;
-    private final boolean[] usedIDs;
+    private final long[] usedMask;
     private final boolean[][][] solved;
     private final ICubeSorter sorter;
     private int x = 0, y = 0, z = 0;
     private CubeIterator currentQuery;
     private final FixedArrayStack<Stage> stages;
+    /* Reusable stages and their candidate buffers, indexed by the number of cubes set before them */
+    private final Stage[] stagePool;
 
     protected SimpleSolver(int dimensionX, int dimensionY, int dimensionZ, ICube[] cubes) {
         this.dimensionX = dimensionX;
@@ -32,13 +37,25 @@ public class SimpleSolver implements IPuzzleSolver {
         this.dimensionZ = dimensionZ;
         this.solution = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
         this.sorter = CubeSorterFactory.makeHashCubeSorter(cubes);
-        this.usedIDs = new boolean[cubes.length + 1];
+        this.usedMask = CubeMask.create(cubes.length);
         this.stages = new FixedArrayStack<>(new Stage[dimensionX * dimensionY * dimensionZ]);
+        this.stagePool = new Stage[dimensionX * dimensionY * dimensionZ];
+        for (int i = 0; i < this.stagePool.length; i++) {
+            this.stagePool[i] = new Stage();
+        }
         this.solved = new boolean[dimensionX][dimensionY][dimensionZ];
     }
 
     public void prepare() throws PuzzleNotSolvableException {
-        this.currentQuery = new CubeIterator(this.sorter.matching(this.solution.getFilterAt(x, y, z)));
+        this.currentQuery = this.stagePool[0].results;
+        PuzzleSymmetry symmetry = new PuzzleSymmetry(dimensionX, dimensionY, dimensionZ);
+        if(symmetry.isTransitiveOnCorners()) {
+            // Both ends can be rotated onto (0, 0, 0), so any one end cube can be fixed there
+            ICube[] cubes = this.sorter.matchingAny(this.solution.getFilterAt(x, y, z));
+            this.currentQuery.fill(symmetry.canonical(new Coordinate(x, y, z), cubes));
+        }else {
+            this.currentQuery.fill(this.sorter, this.solution.getFilterAt(x, y, z), this.usedMask);
+        }
 
         System.out.printf("Starting at (0, 0, 0) with %d possibilities!\n", currentQuery.length());
         if(!currentQuery.hasNext()) throw new PuzzleNotSolvableException();
@@ -59,17 +76,23 @@ public class SimpleSolver implements IPuzzleSolver {
         return solve();
     }
 
+    /**
+     * Sets the next candidate for the current position, tracing back through the stages until one has a candidate left.
+     * @throws PuzzleNotSolvableException If all stages run out of candidates
+     */
     private void solveInternally() throws PuzzleNotSolvableException {
-        // x, y, z set here
-        if(this.currentQuery == null) {
-            this.currentQuery = new CubeIterator(
-                    this.sorter.matching(solution.getFilterAt(x, y, z), this::isFree));
-        }
-        if(currentQuery.hasNext()) {
-            this.set();
-        }else { // Nothing found for this step; Stopping and tracing back;
+        while(true) {
+            // x, y, z set here
+            if(this.currentQuery == null) {
+                this.currentQuery = this.stagePool[this.stages.size()].results;
+                this.currentQuery.fill(this.sorter, solution.getFilterAt(x, y, z), this.usedMask);
+            }
+            if(currentQuery.hasNext()) {
+                this.set();
+                return;
+            }
+            // Nothing found for this step; Stopping and tracing back;
             this.undo();
-            this.solveInternally();
         }
     }
 
@@ -108,10 +131,15 @@ public class SimpleSolver implements IPuzzleSolver {
 
     private void set() {
         ICube cube = currentQuery.next();
-        this.usedIDs[cube.getIdentifier()] = true;
+        CubeMask.set(this.usedMask, cube.getIdentifier());
         this.solved[x][y][z] = true;
         this.solution.set(x, y, z, cube);
-        this.stages.addLast(new Stage(x, y, z, currentQuery));
+        Stage stage = this.stagePool[this.stages.size()];
+        assert stage.results == currentQuery;
+        stage.x = x;
+        stage.y = y;
+        stage.z = z;
+        this.stages.addLast(stage);
         this.currentQuery = null;
     }
 
@@ -123,10 +151,10 @@ public class SimpleSolver implements IPuzzleSolver {
         // Undoes the operation in the solution object and freeing the id of the used cube
         int id = this.solution.undo();
         if(id == -1) throw new PuzzleNotSolvableException();
-        if (Puzzle.DEBUG && id > 0 && !this.usedIDs[id]) {
+        if (Puzzle.DEBUG && id > 0 && !CubeMask.isSet(this.usedMask, id)) {
             throw new IllegalStateException("Trying to free ID " + id + " which wasn't used!");
         }
-        this.usedIDs[id] = false; // Skipping 0 check since id=0 isn't used anyway
+        CubeMask.clear(this.usedMask, id); // Skipping 0 check since id=0 isn't used anyway
         this.solved[x][y][z] = false;
 
         this.x = g.x;
@@ -135,10 +163,6 @@ public class SimpleSolver implements IPuzzleSolver {
         this.currentQuery = g.results;
     }
 
-    private boolean isFree(Integer cube) {
-        return !this.usedIDs[cube];
-    }
-
     @Override
     public String getCurrentStatus() {
         return "";
@@ -149,22 +173,50 @@ public class SimpleSolver implements IPuzzleSolver {
         throw new UnsupportedOperationException();
     }
 
-    private record Stage(int x, int y, int z, CubeIterator results) {}
+    /**
+     * A cube that has been set, together with the remaining candidates for its position. Reused between searches of the same depth.
+     */
+    private static final class Stage {
+        private int x, y, z;
+        private final CubeIterator results = new CubeIterator();
+    }
 
-    private static class CubeIterator {
-        private final ICube[] cubes;
+    /**
+     * Iterates over a reusable candidate buffer, which grows if a query doesn't fit.
+     */
+    private static final class CubeIterator {
+        private ICube[] cubes = new ICube[16];
+        private int length = 0;
         private int index = 0;
 
-        private CubeIterator(ICube[] cubes) {
-            this.cubes = cubes;
+        /**
+         * Replaces the content of this iterator with all free cubes that match the given filter.
+         */
+        private void fill(ICubeSorter sorter, ICubeFilter filter, long[] usedMask) {
+            this.length = sorter.matchingInto(filter, usedMask, this.cubes);
+            if(this.length > this.cubes.length) {
+                this.cubes = new ICube[this.length];
+                sorter.matchingInto(filter, usedMask, this.cubes);
+            }
+            this.index = 0;
+        }
+
+        /**
+         * Replaces the content of this iterator with the given cubes.
+         */
+        private void fill(ICube[] cubes) {
+            if(cubes.length > this.cubes.length) this.cubes = new ICube[cubes.length];
+            System.arraycopy(cubes, 0, this.cubes, 0, cubes.length);
+            this.length = cubes.length;
+            this.index = 0;
         }
 
         public boolean hasNext() {
-            return index < cubes.length;
+            return index < length;
         }
 
         public int length() {
-            return cubes.length;
+            return length;
         }
 
         public ICube next() {
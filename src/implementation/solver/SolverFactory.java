@@ -5,13 +5,44 @@ import abstractions.cube.CubeType;
 import abstractions.cube.ICube;
 import implementation.EdgeCoordinateGenerator;
 import implementation.LinearCoordinateGenerator;
+import implementation.Puzzle;
 import implementation.solution.DynamicPuzzleSolution;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public final class SolverFactory {
+    /**
+     * Default number of threads for concurrent solvers. Searching several branches at once helps even on few cores, so at least four are used.
+     */
+    public static final int DEFAULT_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    /**
+     * Default order in which cuboid solvers try the candidates of each position.
+     */
+    public static final CandidateOrder DEFAULT_CANDIDATE_ORDER = CandidateOrder.Sorter;
+    /**
+     * Default restart policy for {@link Algorithm#Restarts}.
+     */
+    public static final RestartPolicy DEFAULT_RESTART_POLICY = RestartPolicy.luby(1 << 20);
+    /**
+     * Default strategies for {@link Algorithm#Portfolio}.
+     */
+    public static final List<Strategy> DEFAULT_PORTFOLIO = List.of(Strategy.LinearTree, Strategy.Staged, Strategy.Sat);
+
     /**
      * Returns the solver for a solution of type "Zero", meaning all side lengths are 1 and the only cube has no triangles.
      */
@@ -47,14 +78,49 @@ public final class SolverFactory {
     /**
      * Returns the solver for a solution of type "Plane", meaning one dimension is 1 and the other two are greater than 1.
      */
-    private static PuzzleSolverContainer plane(int dimX, int dimY, int dimZ, ICube[] twoConnected, ICube[] threeConnected, ICube[] fourRound) {
-        return new SingleSolverContainer(new StagedSolver(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound));
+    private static PuzzleSolverContainer plane(int dimX, int dimY, int dimZ, ICube[] twoConnected, ICube[] threeConnected, ICube[] fourRound, int parallelism, RestartPolicy restarts, long seed, List<Strategy> portfolio) {
+        DeadStateTable deadStates = Puzzle.DEAD_STATES ? new DeadStateTable() : null;
+        List<Strategy> strategies = portfolio == null ? List.of() : portfolio.stream().filter(s -> s != Strategy.LinearTree && s != Strategy.EdgeTree).toList();
+        if(!strategies.isEmpty()) {
+            int[] threads = threadShares(strategies, parallelism);
+            ICube[] cubes = concat(twoConnected, threeConnected, fourRound);
+            List<PuzzleSolverContainer> members = new ArrayList<>();
+            for (int i = 0; i < strategies.size(); i++) {
+                members.add(switch (strategies.get(i)) {
+                    case Staged -> {
+                        StagedSolver solver = new StagedSolver(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound);
+                        solver.setDynamicOrder(true);
+                        if(deadStates != null) solver.setDeadStates(deadStates);
+                        yield new StagedSolverContainer(solver, threads[i]);
+                    }
+                    case DancingLinks -> new SingleSolverContainer(new DancingLinksSolver(dimX, dimY, dimZ, cubes));
+                    case Sat -> new SingleSolverContainer(new SatSolver(dimX, dimY, dimZ, cubes));
+                    default -> throw new IllegalStateException("Unexpected strategy " + strategies.get(i));
+                });
+            }
+            return new PortfolioSolverContainer(strategies, members);
+        }
+        if(restarts != null) {
+            return new RestartSolverContainer((runSeed, budget) -> {
+                StagedSolver solver = new StagedSolver(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound);
+                solver.setDynamicOrder(true);
+                if(deadStates != null) solver.setDeadStates(deadStates);
+                solver.setRandomOrder(runSeed);
+                solver.prepare();
+                return solver.solve(budget);
+            }, restarts, parallelism, seed);
+        }
+
+        StagedSolver solver = new StagedSolver(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound);
+        solver.setDynamicOrder(true); // Far fewer blowups than the fixed order on larger planes
+        if(deadStates != null) solver.setDeadStates(deadStates);
+        return new StagedSolverContainer(solver, parallelism);
     }
 
     /**
      * Returns the solver for a solution of type "Cuboid", meaning all dimensions are greater than 1.
      */
-    private static PuzzleSolverContainer cuboid(int dimX, int dimY, int dimZ, ICube[] threeEdge, ICube[] fourConnected, ICube[] five, ICube[] six) {
+    private static PuzzleSolverContainer cuboid(int dimX, int dimY, int dimZ, ICube[] threeEdge, ICube[] fourConnected, ICube[] five, ICube[] six, int parallelism, CandidateOrder order, RestartPolicy restarts, long seed, List<Strategy> portfolio) {
         EnumMap<CubeType, ICube[]> cubeMap = new EnumMap<>(CubeType.class);
         cubeMap.put(CubeType.ThreeEdge, threeEdge);
         cubeMap.put(CubeType.FourConnected, fourConnected);
@@ -68,14 +134,172 @@ public final class SolverFactory {
 //        for (int i = 0; i < coords.length; i++) {
 //            revCoords[i] = coords[(coords.length-1) - i];
 //        }
-        return new TreeSolverContainer(dimX, dimY, dimZ, cubeMap, linCoords);
+        // The upper quarter of the tree is shared to balance the load, the rest is searched locally by each thread
+        int splitDepth = Math.max(1, dimX * dimY * dimZ / 4);
+        // Dead states only depend on the cubes set, not on the order they have been set in, so all strategies share them
+        DeadStateTable deadStates = Puzzle.DEAD_STATES ? new DeadStateTable() : null;
+        if(portfolio != null && !portfolio.isEmpty()) {
+            int[] threads = threadShares(portfolio, parallelism);
+            ICube[] cubes = concat(threeEdge, fourConnected, five, six);
+            List<PuzzleSolverContainer> members = new ArrayList<>();
+            for (int i = 0; i < portfolio.size(); i++) {
+                members.add(switch (portfolio.get(i)) {
+                    case LinearTree -> new TreeSolverContainer(dimX, dimY, dimZ, cubeMap, linCoords, threads[i], splitDepth, order, deadStates);
+                    case EdgeTree -> {
+                        Coordinate[] coords = new EdgeCoordinateGenerator(dimX, dimY, dimZ).generate();
+                        yield new TreeSolverContainer(dimX, dimY, dimZ, cubeMap, coords, threads[i], splitDepth, order, deadStates);
+                    }
+                    case Staged -> {
+                        StagedSolver solver = new StagedSolver(dimX, dimY, dimZ, threeEdge, fourConnected, five, six);
+                        solver.setDynamicOrder(true);
+                        if(deadStates != null) solver.setDeadStates(deadStates);
+                        yield new StagedSolverContainer(solver, threads[i]);
+                    }
+                    case DancingLinks -> new SingleSolverContainer(new DancingLinksSolver(dimX, dimY, dimZ, cubes));
+                    case Sat -> new SingleSolverContainer(new SatSolver(dimX, dimY, dimZ, cubes));
+                });
+            }
+            return new PortfolioSolverContainer(portfolio, members);
+        }
+        if(restarts != null) {
+            // Each run searches on a single thread, the threads go to the other seeds instead
+            return new RestartSolverContainer((runSeed, budget) -> {
+                ParallelTreeSearch search = new ParallelTreeSearch(dimX, dimY, dimZ, cubeMap, linCoords, 1, splitDepth, CandidateOrder.Random, runSeed, deadStates);
+                search.setBudget(budget);
+                IPuzzleSolution solution;
+                try {
+                    solution = search.solve();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if(solution == null && !search.isCutOff()) throw new PuzzleNotSolvableException();
+                return solution;
+            }, restarts, parallelism, seed);
+        }
+        return new TreeSolverContainer(dimX, dimY, dimZ, cubeMap, linCoords, parallelism, splitDepth, order, deadStates);
+    }
+
+    /**
+     * Splits the given number of threads between the members of a portfolio: Single-threaded strategies get one, the others share
+     * the rest evenly. The shares add up to at most "parallelism", so each member needs a thread of its own.
+     * @throws IllegalArgumentException If there are more strategies than threads
+     */
+    private static int[] threadShares(List<Strategy> strategies, int parallelism) {
+        if(strategies.size() > parallelism) throw new IllegalArgumentException("A portfolio of " + strategies.size() + " strategies needs at least as many threads, but only got " + parallelism);
+        int single = (int) strategies.stream().filter(s -> s == Strategy.DancingLinks || s == Strategy.Sat).count();
+        int concurrent = strategies.size() - single;
+        int rest = parallelism - single;
+        int[] threads = new int[strategies.size()];
+        for (int i = 0, j = 0; i < threads.length; i++) {
+            Strategy s = strategies.get(i);
+            threads[i] = s == Strategy.DancingLinks || s == Strategy.Sat ? 1 : rest / concurrent + (j++ < rest % concurrent ? 1 : 0);
+        }
+        return threads;
+    }
+
+    private static ICube[] concat(ICube[]... cubes) {
+        return Stream.of(cubes).flatMap(Arrays::stream).toArray(ICube[]::new);
+    }
+
+    /**
+     * Returns a {@link DancingLinksSolver} for the problem, whatever its shape. An alternative to the solvers picked by {@link #of}.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static PuzzleSolverContainer dancingLinks(int dimX, int dimY, int dimZ, ICube[] cubes) throws PuzzleNotSolvableException {
+        if(dimX * dimY * dimZ != cubes.length) throw new PuzzleNotSolvableException("Expected number of cubes doesn't match given number");
+        return new SingleSolverContainer(new DancingLinksSolver(dimX, dimY, dimZ, cubes));
+    }
+
+    /**
+     * Returns a {@link SatSolver} for the problem, whatever its shape. An alternative to the solvers picked by {@link #of}.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static PuzzleSolverContainer sat(int dimX, int dimY, int dimZ, ICube[] cubes) throws PuzzleNotSolvableException {
+        if(dimX * dimY * dimZ != cubes.length) throw new PuzzleNotSolvableException("Expected number of cubes doesn't match given number");
+        return new SingleSolverContainer(new SatSolver(dimX, dimY, dimZ, cubes));
+    }
+
+    /**
+     * Returns the solver {@link #of(int, int, int, ICube[], int)} would pick, but searching with random candidate orders and restarts:
+     * "parallelism" seeds are searched at the same time, each one starting over with a new seed once it has used up the budget of its run.
+     * Lines are small enough to be solved as usual.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     * @param seed Seed from which the seeds of all runs are derived, so the same seed repeats the same runs
+     */
+    public static PuzzleSolverContainer restarts(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism, RestartPolicy policy, long seed) throws PuzzleNotSolvableException {
+        return of(dimX, dimY, dimZ, cubes, parallelism, DEFAULT_CANDIDATE_ORDER, policy, seed, null);
+    }
+
+    /**
+     * Returns a {@link PortfolioSolverContainer} racing the given strategies against each other, sharing "parallelism" threads between them.
+     * Strategies that don't apply to the shape are left out, see {@link Strategy}. If none is left, the solver {@link #of} would pick is returned.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     * @throws IllegalArgumentException If more strategies apply to the shape than there are threads, since each one needs at least one
+     */
+    public static PuzzleSolverContainer portfolio(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism, List<Strategy> strategies) throws PuzzleNotSolvableException {
+        return of(dimX, dimY, dimZ, cubes, parallelism, DEFAULT_CANDIDATE_ORDER, null, 0L, strategies);
+    }
+
+    /**
+     * Returns a {@link SolutionEnumerator} for the problem, whatever its shape, which searches for all solutions on "parallelism" threads.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static SolutionEnumerator enumerator(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism) throws PuzzleNotSolvableException {
+        if(dimX * dimY * dimZ != cubes.length) throw new PuzzleNotSolvableException("Expected number of cubes doesn't match given number");
+
+        // The tree search works for any shape, as long as each type of position has a sorter
+        EnumMap<CubeType, ICube[]> cubeMap = new EnumMap<>(CubeType.class);
+        for (CubeType type : CubeType.values()) {
+            cubeMap.put(type, Arrays.stream(cubes).filter(cube -> CubeType.get(cube.getTriangles()) == type).toArray(ICube[]::new));
+        }
+        return new SolutionEnumerator(dimX, dimY, dimZ, cubeMap, parallelism);
+    }
+
+    /**
+     * Returns a solver for the problem that uses the given algorithm.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static PuzzleSolverContainer of(Algorithm algorithm, int dimX, int dimY, int dimZ, ICube[] cubes) throws PuzzleNotSolvableException {
+        return switch (algorithm) {
+            case Default -> of(dimX, dimY, dimZ, cubes);
+            case DancingLinks -> dancingLinks(dimX, dimY, dimZ, cubes);
+            case Sat -> sat(dimX, dimY, dimZ, cubes);
+            case Restarts -> restarts(dimX, dimY, dimZ, cubes, DEFAULT_PARALLELISM, DEFAULT_RESTART_POLICY, 0L);
+            case Portfolio -> portfolio(dimX, dimY, dimZ, cubes, DEFAULT_PARALLELISM, DEFAULT_PORTFOLIO);
+        };
     }
 
     /**
-     * Returns the matching solver for the problem...
+     * Returns the matching solver for the problem, using {@link #DEFAULT_PARALLELISM} threads.
      * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
      */
     public static PuzzleSolverContainer of(int dimX, int dimY, int dimZ, ICube[] cubes) throws PuzzleNotSolvableException {
+        return of(dimX, dimY, dimZ, cubes, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Returns the matching solver for the problem, using {@link #DEFAULT_CANDIDATE_ORDER}. Concurrent solvers use up to "parallelism" threads.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static PuzzleSolverContainer of(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism) throws PuzzleNotSolvableException {
+        return of(dimX, dimY, dimZ, cubes, parallelism, DEFAULT_CANDIDATE_ORDER);
+    }
+
+    /**
+     * Returns the matching solver for the problem. Concurrent solvers use up to "parallelism" threads, and cuboid solvers try the
+     * candidates of each position in the given order.
+     * Throws a PuzzleNotSolvableException if the given data has no solutions by design (missing cubes).
+     */
+    public static PuzzleSolverContainer of(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism, CandidateOrder order) throws PuzzleNotSolvableException {
+        return of(dimX, dimY, dimZ, cubes, parallelism, order, null, 0L, null);
+    }
+
+    /**
+     * Picks the solver for the shape of the problem, see above. If "restarts" isn't null, planes and cuboids are searched by a
+     * {@link RestartSolverContainer} instead, and if "portfolio" isn't null, by a {@link PortfolioSolverContainer}.
+     */
+    private static PuzzleSolverContainer of(int dimX, int dimY, int dimZ, ICube[] cubes, int parallelism, CandidateOrder order, RestartPolicy restarts, long seed, List<Strategy> portfolio) throws PuzzleNotSolvableException {
         if(dimX * dimY * dimZ != cubes.length) throw new PuzzleNotSolvableException("Expected number of cubes doesn't match given number");
 
         // Sort X, Y and Z so that X ≥ Y ≥ Z
@@ -173,7 +397,7 @@ public final class SolverFactory {
                         default -> throw new PuzzleNotSolvableException("Unexpected cube type!");
                     }
                 }
-                return plane(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound);
+                return plane(dimX, dimY, dimZ, twoConnected, threeConnected, fourRound, parallelism, restarts, seed, portfolio);
             }
         } else {// x, y, z ≥ 2
             // + -- + -- + ... + -- + -- +    + -- + -- + ... + -- + -- +    + -- + -- + ... + -- + -- +
@@ -234,7 +458,7 @@ public final class SolverFactory {
                     default -> throw new PuzzleNotSolvableException("Unexpected cube type!");
                 }
             }
-            return cuboid(dimX, dimY, dimZ, threeEdge, fourConnected, five, six);
+            return cuboid(dimX, dimY, dimZ, threeEdge, fourConnected, five, six, parallelism, order, restarts, seed, portfolio);
         }
     }
 
@@ -258,10 +482,20 @@ public final class SolverFactory {
          * @throws TimeoutException If the timeout is reached.
          */
         public abstract IPuzzleSolution solveWithTimeout(ExecutorService solverExecutor, ScheduledExecutorService loggingExecutor, int seconds) throws TimeoutException;
+
+        /**
+         * Executes the given solver as a member of a {@link PortfolioSolverContainer}. Returns the solution, or null if none has been found.
+         * Throws a PuzzleNotSolvableException instead if the solver has proven that there is none, so the race can end early.
+         * By default nothing is ever proven, since solve() returns null for errors and cancellation as well.
+         * @param logging Whether to print the status while solving
+         */
+        IPuzzleSolution solveInRace(boolean logging) throws PuzzleNotSolvableException {
+            return logging ? this.solveWithLogging() : this.solve();
+        }
     }
 
     /**
-     * Abstract logic to execute a solver on the main thread
+     * Abstract logic to execute a solver on the main thread. Stops if the thread gets interrupted, see {@link IPuzzleSolver#solveConcurrent()}.
      */
     public static class SingleSolverContainer extends PuzzleSolverContainer {
         private final IPuzzleSolver solver;
@@ -274,7 +508,7 @@ public final class SolverFactory {
         public IPuzzleSolution solve() {
             try {
                 this.solver.prepare();
-                return this.solver.solve();
+                return this.solver.solveConcurrent();
             } catch (PuzzleNotSolvableException e) {
                 e.printStackTrace();
                 return null;
@@ -287,7 +521,7 @@ public final class SolverFactory {
             executorService.scheduleAtFixedRate(this.solver, 1, 1, TimeUnit.SECONDS);
             try {
                 this.solver.prepare();
-                var solution = this.solver.solve();
+                var solution = this.solver.solveConcurrent();
                 executorService.shutdownNow();
                 return solution;
             } catch (PuzzleNotSolvableException e) {
@@ -315,80 +549,334 @@ public final class SolverFactory {
 
             return solution;
         }
+
+        /**
+         * Passes on the PuzzleNotSolvableException of the solver, which it only throws once it has searched everything.
+         */
+        @Override
+        IPuzzleSolution solveInRace(boolean logging) throws PuzzleNotSolvableException {
+            ScheduledExecutorService executorService = logging ? Executors.newSingleThreadScheduledExecutor() : null;
+            try {
+                if(executorService != null) executorService.scheduleAtFixedRate(this.solver, 1, 1, TimeUnit.SECONDS);
+                this.solver.prepare();
+                return this.solver.solveConcurrent();
+            } finally {
+                if(executorService != null) executorService.shutdownNow();
+            }
+        }
     }
 
     /**
-     * Execution logic for a concurrent TreeSolver
+     * Execution logic for a StagedSolver running on multiple threads. The first stages are split into parts (see {@link StagedSolver#split()}),
+     * which are searched in parallel until one of them finds a solution.
      */
-    public static class TreeSolverContainer extends PuzzleSolverContainer {
-        private final List<IPuzzleSolver> solvers;
+    public static class StagedSolverContainer extends PuzzleSolverContainer {
+        /** Number of parts per thread, so threads that finish their part early can pick up another one */
+        private static final int PARTS_PER_THREAD = 8;
+        /** Number of stages that may be split at most */
+        private static final int MAX_SPLIT_DEPTH = 8;
+
+        private final StagedSolver solver;
+        private final int parallelism;
+        private List<StagedSolver> parts = List.of();
+        /** Set once a part has found a solution or the search has been canceled, so all parts stop */
+        private final StopToken stop = new StopToken();
+
+        private StagedSolverContainer(StagedSolver solver, int parallelism) {
+            this.solver = solver;
+            this.parallelism = parallelism;
+        }
 
-        public TreeSolverContainer(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords) {
-            TreeSolver s = new TreeSolver(dimensionX, dimensionY, dimensionZ, cubeMap, coords);
-            TreeSolver s1 = new TreeSolver(dimensionX, dimensionY, dimensionZ, cubeMap, coords);
-            TreeSolver s2 = new TreeSolver(dimensionX, dimensionY, dimensionZ, cubeMap, coords);
-            TreeSolver s3 = new TreeSolver(dimensionX, dimensionY, dimensionZ, cubeMap, coords);
+        /**
+         * Splits the first stages of the solver until there are enough parts for all threads. Parts that turn out to be empty are dropped.
+         * If a part already contains a solution, it is the only one returned.
+         */
+        private List<StagedSolver> split() throws PuzzleNotSolvableException {
+            this.solver.prepare();
 
-            s.prepare();
-            s1.syncStartingNode(s, 1);
-            s2.syncStartingNode(s, 2);
-            s3.syncStartingNode(s, 3);
-            s.syncStartingNode(s, 0);
+            List<StagedSolver> parts = new ArrayList<>(List.of(this.solver));
+            for (int depth = 0; parts.size() < this.parallelism * PARTS_PER_THREAD && depth < MAX_SPLIT_DEPTH; depth++) {
+                List<StagedSolver> next = new ArrayList<>();
+                for (StagedSolver part : parts) {
+                    List<StagedSolver> split = part.split();
+                    split.add(0, part);
+                    for (StagedSolver s : split) {
+                        try {
+                            if(!s.advance()) return List.of(s);
+                            next.add(s);
+                        } catch (PuzzleNotSolvableException e) {
+                            // Nothing to find in this part
+                        }
+                    }
+                }
+                parts = next;
+            }
 
-            solvers = List.of(s, s1, s2, s3);
+            if(parts.isEmpty()) throw new PuzzleNotSolvableException();
+            if(Puzzle.LOG) System.out.printf("Split into %d parts\n", parts.size());
+            for (StagedSolver part : parts) {
+                part.setStopToken(this.stop);
+            }
+            return parts;
+        }
+
+        private void printStatus() {
+            for (int i = 0; i < this.parts.size(); i++) {
+                System.out.println("[P" + i + "] " + this.parts.get(i).getCurrentStatus());
+            }
         }
 
         @Override
         public IPuzzleSolution solve() {
-            ExecutorService executorService = Executors.newFixedThreadPool(4);
+            return this.solve(false);
+        }
+
+        /**
+         * Searches all parts on a new pool.
+         * @param logging Whether to wait for the parts to stop and print how long they took
+         */
+        private IPuzzleSolution solve(boolean logging) {
+            ExecutorService executorService = Executors.newFixedThreadPool(this.parallelism);
             IPuzzleSolution solution = null;
             try {
-                solution = executorService.invokeAny(this.solvers);
-            } catch (ExecutionException | InterruptedException e) {
+                this.parts = this.split();
+                solution = executorService.invokeAny(this.parts);
+            } catch (PuzzleNotSolvableException | ExecutionException e) {
                 e.printStackTrace();
+            } catch (InterruptedException e) { // Canceled
+                Thread.currentThread().interrupt();
             } finally {
+                this.stop.stop();
                 executorService.shutdownNow();
             }
 
+            if(logging) {
+                try {
+                    executorService.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                this.stop.printDelays();
+            }
             return solution;
         }
 
         @Override
         public IPuzzleSolution solveWithLogging() {
-            ExecutorService solverExecutor = Executors.newFixedThreadPool(4);
             ScheduledExecutorService loggingExecutor = Executors.newSingleThreadScheduledExecutor();
-            IPuzzleSolution solution = null;
             try {
-                loggingExecutor.scheduleAtFixedRate(() -> {
-                    for (int i = 0; i < 4; i++) {
-                        System.out.println("[T" + i + "] " + solvers.get(i).getCurrentStatus());
-                    }
-                }, 1, 1, TimeUnit.SECONDS);
+                loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                return this.solve(true);
+            } finally {
+                loggingExecutor.shutdownNow();
+            }
+        }
 
-                solution = solverExecutor.invokeAny(solvers);
-            } catch (ExecutionException | InterruptedException e) {
+        @Override
+        public IPuzzleSolution solveWithTimeout(ExecutorService solverExecutor, ScheduledExecutorService loggingExecutor, int seconds) throws TimeoutException {
+            ScheduledFuture<?> loggingHandle = null;
+            IPuzzleSolution solution = null;
+            try {
+                loggingHandle = loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                this.parts = this.split();
+                solution = solverExecutor.invokeAny(this.parts, seconds, TimeUnit.SECONDS);
+            } catch (PuzzleNotSolvableException | InterruptedException | ExecutionException e) {
                 e.printStackTrace();
             } finally {
-                solverExecutor.shutdownNow();
-                loggingExecutor.shutdownNow();
+                this.stop.stop();
+                if (loggingHandle != null) loggingHandle.cancel(true);
+                // The parts run on the given executor, so they can't be awaited
+                loggingExecutor.schedule(this.stop::printDelays, 1, TimeUnit.SECONDS);
             }
 
             return solution;
         }
+    }
+
+    /**
+     * Execution logic for a concurrent TreeSolver, running a {@link ParallelTreeSearch}
+     */
+    public static class TreeSolverContainer extends PuzzleSolverContainer {
+        private final ParallelTreeSearch search;
+
+        public TreeSolverContainer(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords, int parallelism, int splitDepth, CandidateOrder order, DeadStateTable deadStates) {
+            this.search = new ParallelTreeSearch(dimensionX, dimensionY, dimensionZ, cubeMap, coords, parallelism, splitDepth, order, 0L, deadStates);
+        }
+
+        private void printStatus() {
+            List<String> status = this.search.getStatus();
+            for (int i = 0; i < status.size(); i++) {
+                System.out.println("[T" + i + "] " + status.get(i));
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solve() {
+            try {
+                return this.search.solve();
+            } catch (InterruptedException e) { // Canceled
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solveWithLogging() {
+            ScheduledExecutorService loggingExecutor = Executors.newSingleThreadScheduledExecutor();
+            try {
+                loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                return this.solve();
+            } finally {
+                loggingExecutor.shutdownNow();
+                this.search.printStopDelays();
+            }
+        }
 
+        /**
+         * The search runs on its own pool, so the given solver executor is not used.
+         */
         @Override
         public IPuzzleSolution solveWithTimeout(ExecutorService solverExecutor, ScheduledExecutorService loggingExecutor, int seconds) throws TimeoutException {
             ScheduledFuture<?> loggingHandle = null;
             IPuzzleSolution solution = null;
             try {
-                loggingHandle = loggingExecutor.scheduleAtFixedRate(() -> {
-                    for (int i = 0; i < 4; i++) {
-                        System.out.println("[T" + i + "] " + solvers.get(i).getCurrentStatus());
+                loggingHandle = loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                solution = this.search.solve(seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                if (loggingHandle != null) loggingHandle.cancel(true);
+                loggingExecutor.execute(this.search::printStopDelays);
+            }
+
+            return solution;
+        }
+    }
+
+    /**
+     * Execution logic for randomized searches with restarts, see {@link RestartPolicy}. Several seeds are searched at the same time,
+     * each on its own thread. A run that doesn't finish within its budget is thrown away and the thread starts over with a new seed
+     * and the next budget, so an unlucky choice early on doesn't hold up the search for long.
+     * The first solution wins. A run that finishes within its budget without a solution has searched everything, so there is none.
+     */
+    public static class RestartSolverContainer extends PuzzleSolverContainer {
+        /**
+         * One run of a randomized search.
+         */
+        @FunctionalInterface
+        interface Run {
+            /**
+             * Searches with the given seed until the budget is used up. Returns the solution, or null if the budget ran out
+             * or the thread got interrupted.
+             * @throws PuzzleNotSolvableException If everything has been searched without finding a solution
+             */
+            IPuzzleSolution run(long seed, long budget) throws PuzzleNotSolvableException;
+        }
+
+        private final Run run;
+        private final RestartPolicy policy;
+        private final int parallelism;
+        private final long seed;
+        /** Number of the current run of each thread, for logging */
+        private final AtomicIntegerArray runs;
+
+        private RestartSolverContainer(Run run, RestartPolicy policy, int parallelism, long seed) {
+            this.run = run;
+            this.policy = policy;
+            this.parallelism = parallelism;
+            this.seed = seed;
+            this.runs = new AtomicIntegerArray(parallelism);
+        }
+
+        /**
+         * Runs the restarts of the given thread until one of them finishes. Returns the solution, or null if the thread got interrupted.
+         */
+        private IPuzzleSolution search(int thread) throws PuzzleNotSolvableException {
+            SplittableRandom seeds = new SplittableRandom(this.seed + thread);
+            for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                this.runs.set(thread, i);
+                IPuzzleSolution solution = this.run.run(seeds.nextLong(), this.policy.budget(i));
+                if(solution != null) return solution;
+            }
+            return null;
+        }
+
+        private void printStatus() {
+            for (int i = 0; i < this.parallelism; i++) {
+                int run = this.runs.get(i);
+                System.out.println("[R" + i + "] Run " + run + " with a budget of " + this.policy.budget(run));
+            }
+        }
+
+        /**
+         * Runs all threads on the given executor and waits for the first one to finish, then cancels the others.
+         * Returns the solution, or null if there is none.
+         * @throws TimeoutException If no thread finished in time
+         */
+        private IPuzzleSolution solve(ExecutorService executor, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            CompletableFuture<IPuzzleSolution> result = new CompletableFuture<>();
+            List<Future<?>> handles = new ArrayList<>();
+            for (int i = 0; i < this.parallelism; i++) {
+                int thread = i;
+                handles.add(executor.submit(() -> {
+                    try {
+                        IPuzzleSolution solution = this.search(thread);
+                        if(solution != null) result.complete(solution);
+                    } catch (PuzzleNotSolvableException e) {
+                        result.complete(null);
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
                     }
-                }, 1, 1, TimeUnit.SECONDS);
+                }));
+            }
+
+            try {
+                return result.get(timeout, unit);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                for (Future<?> handle : handles) {
+                    handle.cancel(true);
+                }
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solve() {
+            ExecutorService executorService = Executors.newFixedThreadPool(this.parallelism);
+            try {
+                return this.solve(executorService, Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (TimeoutException e) {
+                e.printStackTrace();
+                return null;
+            } catch (InterruptedException e) { // Canceled
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solveWithLogging() {
+            ScheduledExecutorService loggingExecutor = Executors.newSingleThreadScheduledExecutor();
+            try {
+                loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                return this.solve();
+            } finally {
+                loggingExecutor.shutdownNow();
+            }
+        }
 
-                solution = solverExecutor.invokeAny(solvers, seconds, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException e) {
+        @Override
+        public IPuzzleSolution solveWithTimeout(ExecutorService solverExecutor, ScheduledExecutorService loggingExecutor, int seconds) throws TimeoutException {
+            ScheduledFuture<?> loggingHandle = null;
+            IPuzzleSolution solution = null;
+            try {
+                loggingHandle = loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                solution = this.solve(solverExecutor, seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
                 e.printStackTrace();
             } finally {
                 if (loggingHandle != null) loggingHandle.cancel(true);
@@ -397,4 +885,209 @@ public final class SolverFactory {
             return solution;
         }
     }
+
+    /**
+     * Execution logic for a portfolio: Several solvers search the same puzzle at the same time, each with its own share of the threads
+     * (see {@link SolverFactory#portfolio}). Since no strategy is the fastest on every input, racing them cuts off the slow cases.
+     * Each member is started from a thread of the race. Single-threaded members search on it, the others only wait on it while
+     * their own pool searches, so the threads that are actually searching add up to the shares.
+     * The first solution wins and the others are canceled. Members that find none don't end the race, since that might just be
+     * an error, unless they prove that there is none (see {@link PuzzleSolverContainer#solveInRace(boolean)}).
+     */
+    public static class PortfolioSolverContainer extends PuzzleSolverContainer {
+        private final List<Strategy> strategies;
+        private final List<PuzzleSolverContainer> members;
+
+        private PortfolioSolverContainer(List<Strategy> strategies, List<PuzzleSolverContainer> members) {
+            this.strategies = strategies;
+            this.members = members;
+        }
+
+        /**
+         * Runs all members, each on its own thread, and waits for the first solution or proof that there is none, then cancels
+         * the others. Otherwise waits for all members to finish. Returns the solution, or null if there is none.
+         * @param logging Whether the members print their status
+         * @throws TimeoutException If no member finished in time
+         * @throws RuntimeException The first exception a member has thrown, if no other member has found an answer
+         */
+        private IPuzzleSolution race(boolean logging, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            ExecutorService executorService = Executors.newFixedThreadPool(this.members.size());
+            CompletableFuture<IPuzzleSolution> result = new CompletableFuture<>();
+            AtomicInteger finished = new AtomicInteger();
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            for (int i = 0; i < this.members.size(); i++) {
+                PuzzleSolverContainer member = this.members.get(i);
+                Strategy strategy = this.strategies.get(i);
+                executorService.execute(() -> {
+                    try {
+                        IPuzzleSolution solution = member.solveInRace(logging);
+                        if(Thread.currentThread().isInterrupted()) return; // Lost the race
+                        if(solution != null) {
+                            if(Puzzle.LOG) System.out.println(strategy + " found a solution first");
+                            result.complete(solution);
+                        }
+                    } catch (PuzzleNotSolvableException e) {
+                        if(Puzzle.LOG) System.out.println(strategy + " proved that there is no solution");
+                        result.complete(null);
+                    } catch (RuntimeException e) {
+                        if(!failure.compareAndSet(null, e)) failure.get().addSuppressed(e);
+                    } finally {
+                        // The last member to finish ends the race if nobody has found an answer
+                        if(finished.incrementAndGet() == this.members.size()) {
+                            if(failure.get() != null) result.completeExceptionally(failure.get());
+                            else result.complete(null);
+                        }
+                    }
+                });
+            }
+
+            try {
+                return result.get(timeout, unit);
+            } catch (ExecutionException e) {
+                throw (RuntimeException) e.getCause(); // Only member failures complete the result exceptionally
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solve() {
+            try {
+                return this.race(false, Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (TimeoutException e) {
+                e.printStackTrace();
+                return null;
+            } catch (InterruptedException e) { // Canceled
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        @Override
+        public IPuzzleSolution solveWithLogging() {
+            try {
+                return this.race(true, Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (TimeoutException e) {
+                e.printStackTrace();
+                return null;
+            } catch (InterruptedException e) { // Canceled
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * The members run on their own threads, so the given executors are not used.
+         */
+        @Override
+        public IPuzzleSolution solveWithTimeout(ExecutorService solverExecutor, ScheduledExecutorService loggingExecutor, int seconds) throws TimeoutException {
+            try {
+                return this.race(true, seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Searches for all solutions of a puzzle instead of just the first one, on a {@link ParallelTreeSearch} that goes on after each solution.
+     * Solutions can be streamed to a consumer or a file as they are found, or just be counted. Solutions that only differ by equal
+     * cubes being swapped count once, and solutions that are rotations of each other optionally do as well.
+     * Each call runs a new search.
+     */
+    public static class SolutionEnumerator implements IEnumeratingSolver {
+        private final int dimensionX, dimensionY, dimensionZ;
+        private final EnumMap<CubeType, ICube[]> cubeMap;
+        private final Coordinate[] coords;
+        private final int parallelism, splitDepth;
+        /** The search currently running, for logging */
+        private volatile ParallelTreeSearch search = null;
+
+        private SolutionEnumerator(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, int parallelism) {
+            this.dimensionX = dimensionX;
+            this.dimensionY = dimensionY;
+            this.dimensionZ = dimensionZ;
+            this.cubeMap = cubeMap;
+            this.coords = new LinearCoordinateGenerator(dimensionX, dimensionY, dimensionZ).generate();
+            this.parallelism = parallelism;
+            // Same split as for a single solution. Every subtree gets searched completely, so the load is balanced by stealing alone
+            this.splitDepth = Math.max(1, dimensionX * dimensionY * dimensionZ / 4);
+        }
+
+        /**
+         * Same as {@link #enumerate(Consumer, boolean)}, counting rotations of a solution as solutions of their own.
+         */
+        @Override
+        public long enumerate(Consumer<IPuzzleSolution> consumer) throws InterruptedException {
+            return this.enumerate(consumer, false);
+        }
+
+        /**
+         * Hands every solution to the given consumer as soon as it is found and returns the number of solutions.
+         * The consumer is called by all threads at the same time, so it has to be thread-safe.
+         * @param collapseSymmetric Whether only one solution of each group of solutions that are rotations of each other is handed on and counted
+         * @throws InterruptedException If the calling thread got interrupted, which stops the search
+         */
+        public long enumerate(Consumer<IPuzzleSolution> consumer, boolean collapseSymmetric) throws InterruptedException {
+            this.search = new ParallelTreeSearch(dimensionX, dimensionY, dimensionZ, cubeMap, coords, parallelism, splitDepth);
+            return this.search.enumerate(consumer, collapseSymmetric);
+        }
+
+        /**
+         * Writes every solution to the given file as soon as it is found, serialized like a single result and followed by an empty line.
+         * Returns the number of solutions.
+         * @param collapseSymmetric Whether only one solution of each group of solutions that are rotations of each other is written and counted
+         * @throws InterruptedException If the calling thread got interrupted, which stops the search
+         */
+        public long enumerate(Path file, boolean collapseSymmetric) throws IOException, InterruptedException {
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                return this.enumerate(solution -> {
+                    String s = solution.serialize(); // Outside the lock, so the threads only wait for the writing itself
+                    try {
+                        synchronized (writer) {
+                            writer.write(s);
+                            writer.newLine();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, collapseSymmetric);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Returns the number of solutions without keeping any of them.
+         * @param collapseSymmetric Whether solutions that are rotations of each other count once
+         * @throws InterruptedException If the calling thread got interrupted, which stops the search
+         */
+        public long count(boolean collapseSymmetric) throws InterruptedException {
+            return this.enumerate((Consumer<IPuzzleSolution>) null, collapseSymmetric);
+        }
+
+        /**
+         * Same as {@link #count(boolean)}, but prints the number of solutions found so far and the status of all threads every second.
+         */
+        public long countWithLogging(boolean collapseSymmetric) throws InterruptedException {
+            ScheduledExecutorService loggingExecutor = Executors.newSingleThreadScheduledExecutor();
+            try {
+                loggingExecutor.scheduleAtFixedRate(this::printStatus, 1, 1, TimeUnit.SECONDS);
+                return this.count(collapseSymmetric);
+            } finally {
+                loggingExecutor.shutdownNow();
+            }
+        }
+
+        private void printStatus() {
+            ParallelTreeSearch search = this.search;
+            if(search == null) return;
+            System.out.println(search.getSolutionCount() + " solutions so far");
+            List<String> status = search.getStatus();
+            for (int i = 0; i < status.size(); i++) {
+                System.out.println("[T" + i + "] " + status.get(i));
+            }
+        }
+    }
 }
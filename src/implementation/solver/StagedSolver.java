@@ -1,31 +1,60 @@
 package implementation.solver;
 
+import abstractions.Coordinate;
 import abstractions.cube.CubeType;
 import implementation.FixedArrayStack;
 import abstractions.IPuzzleSolution;
 import abstractions.IPuzzleSolver;
 import abstractions.PuzzleNotSolvableException;
 import abstractions.cube.ICube;
+import abstractions.cube.ICubeFilter;
+import abstractions.cube.ICubeSorter;
 import implementation.Puzzle;
+import implementation.cube.CubeMask;
 import implementation.cube.sorter.ArrayCubeSorter;
 import implementation.cube.sorter.CubeSorterFactory;
 import implementation.solution.DynamicPuzzleSolution;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
 
 public class StagedSolver implements IPuzzleSolver {
+    /** Number of steps between two checks whether to stop. Smaller than {@link StopToken#POLL_INTERVAL}, since each step costs a lot more than one of the TreeSolver */
+    private static final int POLL_INTERVAL = 1 << 6;
+
     /* Immutable */
     public final int dimensionX, dimensionY, dimensionZ;
 
     /* Mutable */
     private final DynamicPuzzleSolution solution;
-    private final boolean[] usedIDs;
+    private final long[] usedMask;
     private final boolean[][][] solved;
     private final ArrayCubeSorter[][][] sorter;
     private int x = 0, y = 0, z = 0;
     private CubeIterator currentQuery;
     private final FixedArrayStack<Stage> stages;
+    /* Reusable stages and their candidate buffers, indexed by the number of cubes set before them */
+    private final Stage[] stagePool;
     private long iter = 0L;
+    /* Whether the next position is chosen by setNextCoordsDynamic() instead of the fixed order */
+    private boolean dynamicOrder = false;
+    /* Only maintained with dynamic ordering, indexed by position(x, y, z): The cubes that fit into each empty position next to a set cube
+       (null for all other positions), how many of them are still free and the number of set cubes next to each position */
+    private final long[][] candidateMasks;
+    private final int[] candidateCounts, setNeighbors;
+    /* Dead states shared by all solvers split from the same one, or null if they aren't tracked. The hash of the cubes set so far
+       is only maintained if they are */
+    private DeadStateTable deadStates = null;
+    private FrontierHash frontier = null;
+    private long pruned = 0L;
+    /* Shuffles the candidates of each position, or null to keep the order of the sorters */
+    private SplittableRandom random = null;
+    /* Shared by all solvers searching the same puzzle, or null. Polled along with the interrupt flag whenever "polls" is a multiple of
+       POLL_INTERVAL */
+    private StopToken stop = null;
+    private int polls = 0;
 
     /**
      * Internal base constructor
@@ -36,9 +65,16 @@ public class StagedSolver implements IPuzzleSolver {
         this.dimensionZ = dimensionZ;
         this.solution = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
         this.sorter = new ArrayCubeSorter[dimensionX][dimensionY][dimensionZ];
-        this.usedIDs = new boolean[cubeLength + 1];
+        this.usedMask = CubeMask.create(cubeLength);
         this.stages = new FixedArrayStack<>(new Stage[dimensionX * dimensionY * dimensionZ]);
+        this.stagePool = new Stage[dimensionX * dimensionY * dimensionZ];
+        for (int i = 0; i < this.stagePool.length; i++) {
+            this.stagePool[i] = new Stage();
+        }
         this.solved = new boolean[dimensionX][dimensionY][dimensionZ];
+        this.candidateMasks = new long[dimensionX * dimensionY * dimensionZ][];
+        this.candidateCounts = new int[dimensionX * dimensionY * dimensionZ];
+        this.setNeighbors = new int[dimensionX * dimensionY * dimensionZ];
     }
 
     /**
@@ -122,8 +158,50 @@ public class StagedSolver implements IPuzzleSolver {
         }
     }
 
+    /**
+     * Enables or disables dynamic ordering: Instead of filling the positions in a fixed order, the solver continues with
+     * the most constrained empty position (see {@link #setNextCoordsDynamic()}). Has to be called before {@link #prepare()}.
+     */
+    public void setDynamicOrder(boolean dynamicOrder) {
+        this.dynamicOrder = dynamicOrder;
+    }
+
+    /**
+     * Records partial solutions that have been searched completely in the given table, and skips the ones found in it.
+     * Solvers split from this one share the table. Has to be called before {@link #prepare()}.
+     */
+    public void setDeadStates(DeadStateTable deadStates) {
+        this.deadStates = deadStates;
+        this.frontier = new FrontierHash(dimensionX, dimensionY, dimensionZ);
+    }
+
+    /**
+     * Tries the candidates of each position in a random order drawn from the given seed, instead of the order of the sorters.
+     * Has to be called before {@link #prepare()}.
+     */
+    public void setRandomOrder(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Makes {@link #solveConcurrent()} and {@link #solve(long)} exit once the given token is set, in addition to interrupts.
+     */
+    public void setStopToken(StopToken stop) {
+        this.stop = stop;
+    }
+
     public void prepare() throws PuzzleNotSolvableException {
-        this.currentQuery = new CubeIterator(this.sorter[0][0][0].matching(this.solution.getFilterAt(x, y, z)));
+        if(this.dynamicOrder) this.countAllCandidates();
+        this.currentQuery = this.stagePool[0].results;
+        PuzzleSymmetry symmetry = new PuzzleSymmetry(dimensionX, dimensionY, dimensionZ);
+        if(symmetry.isTransitiveOnCorners()) {
+            // Every corner can be rotated onto (0, 0, 0), so any one corner cube can be fixed there
+            ICube[] cubes = this.sorter[0][0][0].matchingAny(this.solution.getFilterAt(x, y, z));
+            this.currentQuery.fill(symmetry.canonical(new Coordinate(x, y, z), cubes));
+        }else {
+            this.currentQuery.fill(this.sorter[0][0][0], this.solution.getFilterAt(x, y, z), this.usedMask);
+        }
+        if(this.random != null) this.currentQuery.shuffle(this.random);
 
         System.out.printf("Starting at (0, 0, 0) with %d possibilities!\n", currentQuery.length());
         if(!currentQuery.hasNext()) throw new PuzzleNotSolvableException();
@@ -142,7 +220,7 @@ public class StagedSolver implements IPuzzleSolver {
     @Override
     public IPuzzleSolution solveConcurrent() throws PuzzleNotSolvableException {
         while(setNextCoords()) {
-            if(Thread.currentThread().isInterrupted()) {
+            if(this.isStopped()) {
                 if(Puzzle.LOG) System.out.println("Got interrupted, exiting!");
                 return null;
             }
@@ -152,26 +230,233 @@ public class StagedSolver implements IPuzzleSolver {
         return solution;
     }
 
+    /**
+     * Returns true if the stop token is set or the thread got interrupted, acknowledging the stop. Only checks every
+     * {@link #POLL_INTERVAL} calls, returns false otherwise.
+     */
+    private boolean isStopped() {
+        if((++this.polls & (POLL_INTERVAL - 1)) != 0) return false;
+        boolean stopped = this.stop != null && this.stop.isStopped();
+        if(!stopped && !Thread.currentThread().isInterrupted()) return false;
+        if(this.stop != null) this.stop.acknowledge();
+        return true;
+    }
+
+    /**
+     * Solves like {@link #solve()}, but gives up once the given number of candidates has been tried. Returns null in that case,
+     * or if the thread got interrupted.
+     * @throws PuzzleNotSolvableException If no solution could be found within the budget, because there is none
+     */
+    public IPuzzleSolution solve(long budget) throws PuzzleNotSolvableException {
+        long limit = budget >= Long.MAX_VALUE - this.iter ? Long.MAX_VALUE : this.iter + budget;
+        while(setNextCoords()) {
+            if(this.iter >= limit || this.isStopped()) return null;
+            solveInternally();
+        }
+
+        return solution;
+    }
+
+    /**
+     * Places a cube on the next position, tracing back if necessary. Returns false if there is no next position, meaning the puzzle is solved.
+     * @throws PuzzleNotSolvableException If no solution could be found
+     */
+    public boolean advance() throws PuzzleNotSolvableException {
+        if(!setNextCoords()) return false;
+        solveInternally();
+        return true;
+    }
+
+    /**
+     * Hands each remaining candidate of the last stage to a new solver, which has that candidate set instead.
+     * Afterwards, neither this solver nor the new ones try any alternatives for the stages set so far,
+     * so together they search exactly what this solver would have searched alone.
+     */
+    public List<StagedSolver> split() {
+        List<StagedSolver> solvers = new ArrayList<>();
+        Stage last = this.stages.peekLast();
+        if(last == null) return solvers;
+        assert this.currentQuery == null;
+
+        List<ICube> alternatives = new ArrayList<>();
+        while(last.results.hasNext()) alternatives.add(last.results.next());
+        for (int i = 0; i < this.stages.size(); i++) {
+            this.stagePool[i].results.exhaust();
+        }
+
+        for (ICube cube : alternatives) {
+            StagedSolver s = this.deepClone();
+            s.replaceLast(cube);
+            solvers.add(s);
+        }
+        return solvers;
+    }
+
+    /**
+     * Replaces the cube set by the last stage with the given one
+     */
+    private void replaceLast(ICube cube) {
+        Stage last = this.stages.peekLast();
+        if(this.frontier != null) {
+            this.frontier.unset(last.x, last.y, last.z, this.solution.getSolutionAt(last.x, last.y, last.z));
+            this.frontier.set(last.x, last.y, last.z, cube);
+        }
+        CubeMask.clear(this.usedMask, this.solution.undo());
+        this.solution.set(last.x, last.y, last.z, cube);
+        CubeMask.set(this.usedMask, cube.getIdentifier());
+        if(this.dynamicOrder) this.countAllCandidates();
+    }
+
+    /**
+     * Sets the next candidate for the current position, tracing back through the stages until one is left that isn't pruned.
+     * The stages are the only stack, so backtracking doesn't grow the call stack.
+     * @throws PuzzleNotSolvableException If all stages run out of candidates
+     */
     private void solveInternally() throws PuzzleNotSolvableException {
-        // x, y, z set here
-        if(this.currentQuery == null) {
-            this.currentQuery = new CubeIterator(
-                    this.sorter[x][y][z].matching(solution.getFilterAt(x, y, z), this::isFree));
-        }
-        if(currentQuery.hasNext()) {
-            this.set();
-        }else { // Nothing found for this step; Stopping and tracing back;
+        while(true) {
+            iter++;
+            // x, y, z set here
+            if(this.currentQuery == null) {
+                this.currentQuery = this.stagePool[this.stages.size()].results;
+                this.currentQuery.fill(this.sorter[x][y][z], solution.getFilterAt(x, y, z), this.usedMask);
+                if(this.random != null) this.currentQuery.shuffle(this.random);
+            }
+            if(currentQuery.hasNext()) {
+                this.set();
+                if(!this.isPruned()) return;
+                // Dead end, tries the next candidate
+            }else { // Nothing found for this step; Stopping and tracing back;
+                // All candidates have been searched, unless some were handed to other solvers
+                if(this.deadStates != null && this.currentQuery.complete) this.deadStates.add(this.frontier.get());
+            }
             this.undo();
-            this.solveInternally();
         }
+    }
 
-        iter++;
+    /**
+     * Returns true if the cubes set so far can't lead to a solution: Either forward checking is enabled and an empty neighbor
+     * of the current position has no free candidates left, or the same frontier has been searched before.
+     */
+    private boolean isPruned() {
+        if(Puzzle.FORWARD_CHECKING && !this.neighborsHaveCandidates()) return true;
+        if(this.deadStates != null && this.deadStates.contains(this.frontier.get())) {
+            this.pruned++;
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Goes in x direction till the end, then y, then z.
+     * Returns whether every empty neighbor of the current position still has at least one free cube that fits into it.
+     */
+    private boolean neighborsHaveCandidates() {
+        for (ICube.Side s : ICube.Side.values()) {
+            int x = this.x + s.x, y = this.y + s.y, z = this.z + s.z;
+            if(validX(x) && validY(y) && validZ(z) && !this.solved[x][y][z] &&
+                    !this.sorter[x][y][z].hasCubes(this.solution.getFilterAt(x, y, z), this.usedMask)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the next position, returns false if all positions are solved.
      */
     private boolean setNextCoords() {
+        return this.dynamicOrder ? this.setNextCoordsDynamic() : this.setNextCoordsLinear();
+    }
+
+    /**
+     * Goes to the empty position next to the cubes set so far with the fewest candidates left. Positions with a single candidate
+     * or none at all are taken first, otherwise positions with more cubes next to them are preferred, since purely going by the
+     * candidates fills the small outer types first and only runs into the dead ends in the middle at the very end.
+     * Ties are broken in the order of {@link #setNextCoordsLinear()}.
+     */
+    private boolean setNextCoordsDynamic() {
+        long best = Long.MAX_VALUE;
+        int p = 0;
+        for (int z = 0; z < dimensionZ; z++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int x = 0; x < dimensionX; x++, p++) {
+                    if(this.candidateMasks[p] == null) continue;
+                    int count = this.candidateCounts[p];
+                    // Forced positions first, then the ones with most neighbors, then the ones with fewest candidates
+                    long key = count <= 1 ? count : ((long) (6 - this.setNeighbors[p]) << 32) + count;
+                    if(key >= best) continue;
+                    best = key;
+                    this.x = x;
+                    this.y = y;
+                    this.z = z;
+                }
+            }
+        }
+
+        return best != Long.MAX_VALUE;
+    }
+
+    /**
+     * Index of the given position in the arrays used for dynamic ordering, in the order of {@link #setNextCoordsLinear()}.
+     */
+    private int position(int x, int y, int z) {
+        return x + dimensionX * (y + dimensionY * z);
+    }
+
+    /**
+     * Updates the candidates after the cube with the given id has been set (delta = -1) or removed (delta = 1) at the given position.
+     * The filters of its neighbors have changed, so they are counted anew. All other positions only gain or lose that one cube.
+     */
+    private void updateCandidates(int x, int y, int z, int id, int delta) {
+        for (int p = 0; p < this.candidateMasks.length; p++) {
+            long[] candidates = this.candidateMasks[p];
+            // Masks of other types may be too short for that id
+            if(candidates != null && (id >>> 6) < candidates.length && CubeMask.isSet(candidates, id)) this.candidateCounts[p] += delta;
+        }
+
+        this.countCandidates(x, y, z);
+        for (ICube.Side s : ICube.Side.values()) {
+            int x2 = x + s.x, y2 = y + s.y, z2 = z + s.z;
+            if(!validX(x2) || !validY(y2) || !validZ(z2)) continue;
+            this.setNeighbors[position(x2, y2, z2)] -= delta;
+            this.countCandidates(x2, y2, z2);
+        }
+    }
+
+    private void countAllCandidates() {
+        for (int x = 0; x < dimensionX; x++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int z = 0; z < dimensionZ; z++) {
+                    int n = 0;
+                    for (ICube.Side s : ICube.Side.values()) {
+                        int x2 = x + s.x, y2 = y + s.y, z2 = z + s.z;
+                        if(validX(x2) && validY(y2) && validZ(z2) && this.solution.getSolutionAt(x2, y2, z2) != null) n++;
+                    }
+                    this.setNeighbors[position(x, y, z)] = n;
+                }
+            }
+        }
+        for (int x = 0; x < dimensionX; x++) {
+            for (int y = 0; y < dimensionY; y++) {
+                for (int z = 0; z < dimensionZ; z++) {
+                    this.countCandidates(x, y, z);
+                }
+            }
+        }
+    }
+
+    private void countCandidates(int x, int y, int z) {
+        int p = position(x, y, z);
+        if(this.solution.getSolutionAt(x, y, z) != null || this.setNeighbors[p] == 0) {
+            this.candidateMasks[p] = null;
+            return;
+        }
+        long[] candidates = this.sorter[x][y][z].candidates(this.solution.getFilterAt(x, y, z));
+        this.candidateMasks[p] = candidates;
+        this.candidateCounts[p] = CubeMask.countFree(candidates, this.usedMask);
+    }
+
+    /**
+     * Goes in x direction till the end, then y, then z.
+     */
+    private boolean setNextCoordsLinear() {
         if(validX(x + 1) && !this.solved[x+1][y][z]) {
             this.x++;
             return true;
@@ -203,10 +488,17 @@ public class StagedSolver implements IPuzzleSolver {
 
     private void set() {
         ICube cube = currentQuery.next();
-        this.usedIDs[cube.getIdentifier()] = true;
+        CubeMask.set(this.usedMask, cube.getIdentifier());
         this.solved[x][y][z] = true;
         this.solution.set(x, y, z, cube);
-        this.stages.addLast(new Stage(x, y, z, currentQuery));
+        if(this.frontier != null) this.frontier.set(x, y, z, cube);
+        if(this.dynamicOrder) this.updateCandidates(x, y, z, cube.getIdentifier(), -1);
+        Stage stage = this.stagePool[this.stages.size()];
+        assert stage.results == currentQuery;
+        stage.x = x;
+        stage.y = y;
+        stage.z = z;
+        this.stages.addLast(stage);
         this.currentQuery = null;
     }
 
@@ -216,13 +508,15 @@ public class StagedSolver implements IPuzzleSolver {
         if(g == null) throw new PuzzleNotSolvableException();
 
         // Undoes the operation in the solution object and freeing the id of the used cube
+        if(this.frontier != null) this.frontier.unset(g.x, g.y, g.z, this.solution.getSolutionAt(g.x, g.y, g.z));
         int id = this.solution.undo();
         if(id == -1) throw new PuzzleNotSolvableException();
-        if (Puzzle.DEBUG && id > 0 && !this.usedIDs[id]) {
+        if (Puzzle.DEBUG && id > 0 && !CubeMask.isSet(this.usedMask, id)) {
             throw new IllegalStateException("Trying to free ID " + id + " which wasn't used!");
         }
-        this.usedIDs[id] = false; // Skipping 0 check since id=0 isn't used anyway
+        CubeMask.clear(this.usedMask, id); // Skipping 0 check since id=0 isn't used anyway
         this.solved[x][y][z] = false;
+        if(this.dynamicOrder) this.updateCandidates(g.x, g.y, g.z, id, 1);
 
         this.x = g.x;
         this.y = g.y;
@@ -230,10 +524,6 @@ public class StagedSolver implements IPuzzleSolver {
         this.currentQuery = g.results;
     }
 
-    private boolean isFree(Integer cube) {
-        return !this.usedIDs[cube];
-    }
-
     @Override
     public String getCurrentStatus() {
         Stage zero = this.stages.peekFirst();
@@ -242,54 +532,132 @@ public class StagedSolver implements IPuzzleSolver {
         String lastStr = " (?/?)", zeroStr = ", StageZero(?/?)";
         if(zero != null) zeroStr = ", StageZero(" + zero.results.index + "/" + zero.results.length() + ")";
         if(last != null) lastStr = " (" + last.results.index + "/" + last.results.length() + ")";
-        return String.format("[%d] [%d,%d,%d] Stage %d%s%s",
-                iter, x, y, z, this.stages.size(), lastStr, zeroStr);
+        String prunedStr = this.deadStates != null ? ", " + this.pruned + " pruned" : "";
+        return String.format("[%d] [%d,%d,%d] Stage %d%s%s%s",
+                iter, x, y, z, this.stages.size(), lastStr, zeroStr, prunedStr);
     }
 
     @Override
-    public IPuzzleSolver deepClone() {
-        StagedSolver s = new StagedSolver(dimensionX, dimensionY, dimensionZ, usedIDs.length-1, this.sorter);
-        for (Stage stage : this.stages) {
-            stage.clone();
-            s.stages.addLast(stage.clone());
+    public StagedSolver deepClone() {
+        StagedSolver s = new StagedSolver(dimensionX, dimensionY, dimensionZ, dimensionX * dimensionY * dimensionZ, this.sorter);
+        // Replays all stages, so the solution of the clone has the same filters and undo history
+        for (int i = 0; i < this.stages.size(); i++) {
+            Stage stage = this.stagePool[i];
+            ICube cube = this.solution.getSolutionAt(stage.x, stage.y, stage.z);
+            s.stagePool[i].copyFrom(stage);
+            s.stages.addLast(s.stagePool[i]);
+            s.solution.set(stage.x, stage.y, stage.z, cube);
+            CubeMask.set(s.usedMask, cube.getIdentifier());
+            s.solved[stage.x][stage.y][stage.z] = true;
+        }
+        if(this.deadStates != null) {
+            s.setDeadStates(this.deadStates);
+            for (int i = 0; i < this.stages.size(); i++) {
+                Stage stage = this.stagePool[i];
+                s.frontier.set(stage.x, stage.y, stage.z, s.solution.getSolutionAt(stage.x, stage.y, stage.z));
+            }
+        }
+        if(this.currentQuery != null) { // Candidates for the current position have been queried already
+            assert this.currentQuery == this.stagePool[this.stages.size()].results;
+            s.stagePool[this.stages.size()].copyFrom(this.stagePool[this.stages.size()]);
+            s.currentQuery = s.stagePool[this.stages.size()].results;
         }
+        s.x = this.x;
+        s.y = this.y;
+        s.z = this.z;
+        s.iter = this.iter;
+        s.dynamicOrder = this.dynamicOrder;
+        if(this.random != null) s.random = this.random.split();
+        if(s.dynamicOrder) s.countAllCandidates();
         return s;
     }
 
-    private record Stage(int x, int y, int z, CubeIterator results) implements Cloneable {
-        @Override
-        public Stage clone() {
-            return new Stage(x, y, z, results.clone());
+    /**
+     * A cube that has been set, together with the remaining candidates for its position. Reused between searches of the same depth.
+     */
+    private static final class Stage {
+        private int x, y, z;
+        private final CubeIterator results = new CubeIterator();
+
+        private void copyFrom(Stage other) {
+            this.x = other.x;
+            this.y = other.y;
+            this.z = other.z;
+            this.results.copyFrom(other.results);
         }
     }
 
-    private static class CubeIterator implements Cloneable{
-        private final ICube[] cubes;
+    /**
+     * Iterates over a reusable candidate buffer, which grows if a query doesn't fit.
+     */
+    private static final class CubeIterator {
+        private ICube[] cubes = new ICube[16];
+        private int length = 0;
         private int index = 0;
+        /** Whether this holds all cubes that fit, and none of them have been skipped */
+        private boolean complete = false;
+
+        /**
+         * Replaces the content of this iterator with all free cubes that match the given filter.
+         */
+        private void fill(ICubeSorter sorter, ICubeFilter filter, long[] usedMask) {
+            this.length = sorter.matchingInto(filter, usedMask, this.cubes);
+            if(this.length > this.cubes.length) {
+                this.cubes = new ICube[this.length];
+                sorter.matchingInto(filter, usedMask, this.cubes);
+            }
+            this.index = 0;
+            this.complete = true;
+        }
+
+        /**
+         * Replaces the content of this iterator with the given cubes.
+         */
+        private void fill(ICube[] cubes) {
+            if(cubes.length > this.cubes.length) this.cubes = new ICube[cubes.length];
+            System.arraycopy(cubes, 0, this.cubes, 0, cubes.length);
+            this.length = cubes.length;
+            this.index = 0;
+            this.complete = false;
+        }
 
-        private CubeIterator(ICube[] cubes) {
-            this.cubes = cubes;
+        /**
+         * Skips all remaining candidates
+         */
+        private void exhaust() {
+            this.index = this.length;
+            this.complete = false;
+        }
+
+        /**
+         * Shuffles the remaining candidates (Fisher-Yates).
+         */
+        private void shuffle(SplittableRandom random) {
+            for (int i = this.length - 1; i > this.index; i--) {
+                int j = this.index + random.nextInt(i - this.index + 1);
+                ICube tmp = this.cubes[i];
+                this.cubes[i] = this.cubes[j];
+                this.cubes[j] = tmp;
+            }
+        }
+
+        private void copyFrom(CubeIterator other) {
+            this.cubes = other.cubes.clone();
+            this.length = other.length;
+            this.index = other.index;
+            this.complete = other.complete;
         }
 
         public boolean hasNext() {
-            return index < cubes.length;
+            return index < length;
         }
 
         public int length() {
-            return cubes.length;
+            return length;
         }
 
         public ICube next() {
             return cubes[index++];
         }
-
-        @Override
-        public CubeIterator clone() {
-            try {
-                return (CubeIterator) super.clone();
-            } catch (CloneNotSupportedException e) {
-                throw new AssertionError();
-            }
-        }
     }
 }
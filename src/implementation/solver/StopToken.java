@@ -0,0 +1,68 @@
+package implementation.solver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells all workers of a search to stop. Set as soon as one of them has found a solution, or the search has been canceled or timed out.
+ * Workers poll it every {@link #POLL_INTERVAL} iterations, which is cheaper than checking for interrupts all the time, and
+ * acknowledge it when they exit, so it can be logged how long the search took to shut down.
+ */
+public final class StopToken {
+    /** Number of iterations between two polls, a power of two */
+    public static final int POLL_INTERVAL = 1 << 10;
+    /** Polling is due whenever the iteration counter has none of these bits set */
+    public static final int POLL_MASK = POLL_INTERVAL - 1;
+
+    /* Stands for "not yet written" in stoppedAt */
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    /* Time of the first stop(), written by that call only, right after it has set the flag */
+    private final AtomicLong stoppedAt = new AtomicLong(UNSET);
+    /** Time from the stop until each worker noticed it in nanoseconds, by thread name */
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+
+    /**
+     * Tells all workers to stop. Only the first call counts.
+     */
+    public void stop() {
+        long now = System.nanoTime();
+        if(!this.stopped.compareAndSet(false, true)) return;
+        this.stoppedAt.set(now);
+    }
+
+    /**
+     * Returns whether the workers have been told to stop. Doesn't order any other memory accesses, so it is cheap enough for hot loops.
+     */
+    public boolean isStopped() {
+        return this.stopped.getOpaque();
+    }
+
+    /**
+     * Records that the calling worker has noticed the stop and is about to exit. Only the first acknowledgement of each thread counts,
+     * and nothing is recorded if the token hasn't been set.
+     */
+    public void acknowledge() {
+        if(!this.stopped.getAcquire()) return;
+        long stoppedAt;
+        while((stoppedAt = this.stoppedAt.get()) == UNSET) Thread.onSpinWait(); // The first stop() is just about to write it
+        this.delays.putIfAbsent(Thread.currentThread().getName(), System.nanoTime() - stoppedAt);
+    }
+
+    /**
+     * Returns how long each worker took to stop in nanoseconds, by thread name.
+     */
+    public Map<String, Long> getDelays() {
+        return Map.copyOf(this.delays);
+    }
+
+    /**
+     * Prints how long each worker took to stop.
+     */
+    public void printDelays() {
+        this.delays.forEach((worker, delay) -> System.out.printf("%s stopped after %.3f ms\n", worker, delay / 1e6));
+    }
+}
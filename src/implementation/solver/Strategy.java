@@ -0,0 +1,17 @@
+package implementation.solver;
+
+/**
+ * A member of a portfolio, see {@link SolverFactory#portfolio}. Strategies that don't apply to the shape of a puzzle are left out.
+ */
+public enum Strategy {
+    /** {@link TreeSolver} filling the positions line by line, see {@link implementation.LinearCoordinateGenerator}. Cuboids only */
+    LinearTree,
+    /** {@link TreeSolver} filling the edges first, then the faces and the inside last, see {@link implementation.EdgeCoordinateGenerator}. Cuboids only */
+    EdgeTree,
+    /** {@link StagedSolver} with dynamic ordering. Planes and cuboids */
+    Staged,
+    /** {@link DancingLinksSolver}, single-threaded. Planes and cuboids */
+    DancingLinks,
+    /** {@link SatSolver}, single-threaded. Planes and cuboids */
+    Sat
+}
@@ -0,0 +1,282 @@
+package implementation.solver;
+
+import abstractions.cube.ICube;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The search tree shared by all {@link TreeSolver}s, stored as a struct of arrays. A node is just an index, {@link #ROOT} being the root.
+ * The children of a node occupy a consecutive range of indices, which is recycled once the node is finished.
+ * <br>
+ * All state changes are lock-free. The state of a node only ever moves forward: Empty, BeingPopulated, Populated.
+ * Besides that, a node gets flagged DEAD once all its children are finished, and LEFT once the solver that claimed it has moved away.
+ * A node with both flags is finished: Nobody can reach its children anymore, so their range is freed and its parent gets notified.
+ */
+public final class TreeNodePool {
+    public static final int ROOT = 0;
+    /** Returned if there is no such node */
+    public static final int NONE = -1;
+    /** Memory needed for each node */
+    public static final int BYTES_PER_NODE = 6 * Integer.BYTES + 1;
+
+    private static final byte EMPTY = 0, BEING_POPULATED = 1, POPULATED = 2, STATE = 0b11, DEAD = 0b100, LEFT = 0b1000;
+
+    /** Nodes are stored in chunks, so the pool can grow without copying */
+    private static final int CHUNK_BITS = 16, CHUNK_SIZE = 1 << CHUNK_BITS, CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 14;
+    /** Most nodes the pool can ever hold */
+    public static final long MAX_CAPACITY = (long) MAX_CHUNKS * CHUNK_SIZE;
+    /** Longest range of children that is recycled */
+    private static final int MAX_RECYCLED = 1024;
+
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Chunk[] chunks = new Chunk[MAX_CHUNKS];
+    /** Next index that has never been used */
+    private final AtomicInteger top = new AtomicInteger(ROOT + 1);
+    /** Free ranges, indexed by their length. Each entry holds a stamp against ABA in the upper and the first free range in the lower half */
+    private final AtomicLongArray free = new AtomicLongArray(MAX_RECYCLED + 1);
+    /** Cubes, indexed by their handle (see {@link #handle(ICube)}) */
+    private final ICube[] cubes;
+    /** Number of indices {@link #tryPopulate(int, ICube[], int)} may use */
+    private final long capacity;
+
+    /**
+     * @param numCubes Highest cube id
+     * @param capacity Number of nodes {@link #tryPopulate(int, ICube[], int)} may use, at most {@link #MAX_CAPACITY}
+     */
+    public TreeNodePool(int numCubes, long capacity) {
+        this.cubes = new ICube[(numCubes + 1) * 24];
+        this.capacity = Math.min(capacity, MAX_CAPACITY);
+        this.chunks[0] = new Chunk();
+        this.chunks[0].parent[ROOT] = NONE;
+        this.chunks[0].status[ROOT] = BEING_POPULATED;
+        for (int i = 0; i <= MAX_RECYCLED; i++) {
+            this.free.set(i, NONE & 0xFFFFFFFFL);
+        }
+    }
+
+    private static int handle(ICube cube) {
+        return cube.getIdentifier() * 24 + cube.getOrientation().ordinal();
+    }
+
+    private Chunk chunk(int node) {
+        return this.chunks[node >>> CHUNK_BITS];
+    }
+
+    private byte status(int node) {
+        return (byte) BYTES.getVolatile(this.chunk(node).status, node & CHUNK_MASK);
+    }
+
+    public int getParent(int node) {
+        return this.chunk(node).parent[node & CHUNK_MASK];
+    }
+
+    public ICube getCube(int node) {
+        return this.cubes[this.chunk(node).handle[node & CHUNK_MASK]];
+    }
+
+    /**
+     * Returns whether the given node is being populated.
+     */
+    public boolean isBeingPopulated(int node) {
+        return (this.status(node) & STATE) == BEING_POPULATED;
+    }
+
+    /**
+     * Returns whether the given node is dead, meaning it doesn't have any live children.
+     */
+    public boolean isDead(int node) {
+        return (this.status(node) & DEAD) != 0;
+    }
+
+    /**
+     * Returns the oldest child of the given node that nobody has touched yet and marks it as being populated, or NONE if no such node exists.
+     */
+    public int claimEmpty(int node) {
+        Chunk c = this.chunk(node);
+        int i = node & CHUNK_MASK;
+        int first = c.first[i], end = first + c.count[i];
+
+        Chunk children = this.chunk(first);
+        int n = (int) INTS.getVolatile(c.cursor, i);
+        for (; n < end; n++) {
+            int j = n & CHUNK_MASK;
+            if (children.status[j] == EMPTY && BYTES.compareAndSet(children.status, j, EMPTY, BEING_POPULATED)) break;
+        }
+        // Nodes never become empty again, so everything before n can be skipped from now on
+        int cursor;
+        while ((cursor = (int) INTS.getVolatile(c.cursor, i)) < n && !INTS.compareAndSet(c.cursor, i, cursor, n));
+        return n < end ? n : NONE;
+    }
+
+    /**
+     * Populates the given node with the first "length" values of the given array, which may be reused afterwards.
+     * The next generation will consist of as many nodes as values are provided. If no values are provided the node is marked as dead.
+     * This function may only be called by the solver that claimed the node, while it is being populated.
+     */
+    public void populate(int node, ICube[] cubes, int length) {
+        if (length == 0) this.setSearched(node);
+        else this.populate(node, cubes, length, this.allocate(length, false));
+    }
+
+    /**
+     * Same as {@link #populate(int, ICube[], int)}, but fails if that would exceed the capacity of this pool.
+     * Returns whether the node has been populated.
+     */
+    public boolean tryPopulate(int node, ICube[] cubes, int length) {
+        if (length == 0) {
+            this.setSearched(node);
+            return true;
+        }
+
+        int first = this.allocate(length, true);
+        if (first == NONE) return false;
+        this.populate(node, cubes, length, first);
+        return true;
+    }
+
+    /**
+     * Marks the given node as dead without populating it, because its subtree has been searched some other way.
+     * This function may only be called by the solver that claimed the node, while it is being populated.
+     */
+    public void setSearched(int node) {
+        assert this.isBeingPopulated(node);
+
+        Chunk c = this.chunk(node);
+        int i = node & CHUNK_MASK;
+        c.first[i] = 0;
+        c.count[i] = 0;
+        c.cursor[i] = 0;
+        BYTES.setVolatile(c.status, i, POPULATED);
+        this.die(node);
+    }
+
+    private void populate(int node, ICube[] cubes, int length, int first) {
+        assert this.isBeingPopulated(node);
+
+        Chunk c = this.chunk(node);
+        int i = node & CHUNK_MASK;
+        Chunk children = this.chunk(first);
+        for (int k = 0; k < length; k++) {
+            int handle = handle(cubes[k]);
+            this.cubes[handle] = cubes[k];
+
+            int j = (first + k) & CHUNK_MASK;
+            children.parent[j] = node;
+            children.handle[j] = handle;
+            children.first[j] = 0; // Might still link to another free range
+            children.count[j] = 0;
+            children.cursor[j] = 0;
+            children.live[j] = 0;
+            children.status[j] = EMPTY;
+        }
+        c.first[i] = first;
+        c.count[i] = length;
+        c.cursor[i] = first;
+        c.live[i] = length;
+        BYTES.setVolatile(c.status, i, POPULATED); // Publishes the children
+    }
+
+    /**
+     * Called by the solver that claimed the given node once it moves away from it for good.
+     */
+    public void leave(int node) {
+        byte old = (byte) BYTES.getAndBitwiseOr(this.chunk(node).status, node & CHUNK_MASK, LEFT);
+        if ((old & DEAD) != 0) this.finish(node);
+    }
+
+    private void die(int node) {
+        byte old = (byte) BYTES.getAndBitwiseOr(this.chunk(node).status, node & CHUNK_MASK, DEAD);
+        if ((old & LEFT) != 0) this.finish(node);
+    }
+
+    /**
+     * The given node is both dead and left, so its children can't be reached anymore. The last finished child kills its parent.
+     */
+    private void finish(int node) {
+        Chunk c = this.chunk(node);
+        int i = node & CHUNK_MASK;
+        if (c.count[i] > 0) this.release(c.first[i], c.count[i]);
+
+        int parent = c.parent[i];
+        if (parent != NONE && (int) INTS.getAndAdd(this.chunk(parent).live, parent & CHUNK_MASK, -1) == 1) this.die(parent);
+    }
+
+    /**
+     * Returns the first index of a free range of the given length. If "bounded" is set, returns NONE instead of exceeding the capacity.
+     */
+    private int allocate(int length, boolean bounded) {
+        if (length > CHUNK_SIZE) throw new IllegalArgumentException("Too many children: " + length);
+
+        if (length <= MAX_RECYCLED) {
+            while (true) {
+                long head = this.free.get(length);
+                int first = (int) head;
+                if (first == NONE) break;
+                int next = this.chunk(first).first[first & CHUNK_MASK];
+                if (this.free.compareAndSet(length, head, (((head >>> 32) + 1) << 32) | (next & 0xFFFFFFFFL))) return first;
+            }
+        }
+
+        while (true) {
+            int top = this.top.get();
+            // Ranges may not span multiple chunks
+            int first = (top & CHUNK_MASK) + length > CHUNK_SIZE ? (top | CHUNK_MASK) + 1 : top;
+            if (bounded && (long) first + length > this.capacity) return NONE;
+            if (this.top.compareAndSet(top, first + length)) {
+                this.ensureChunk(first >>> CHUNK_BITS);
+                return first;
+            }
+        }
+    }
+
+    /**
+     * Puts the given range on the free list of its length. Its first node links to the next free range.
+     */
+    private void release(int first, int length) {
+        if (length > MAX_RECYCLED) return; // Rare, so this isn't worth a free list
+
+        while (true) {
+            long head = this.free.get(length);
+            this.chunk(first).first[first & CHUNK_MASK] = (int) head;
+            if (this.free.compareAndSet(length, head, (((head >>> 32) + 1) << 32) | (first & 0xFFFFFFFFL))) return;
+        }
+    }
+
+    private void ensureChunk(int index) {
+        if (index >= MAX_CHUNKS) throw new IllegalStateException("Tree node pool exhausted");
+        if (this.chunks[index] != null) return;
+        synchronized (this) {
+            if (this.chunks[index] == null) this.chunks[index] = new Chunk();
+        }
+    }
+
+    /**
+     * Returns the number of nodes that have been allocated so far, including recycled ones.
+     */
+    public int getAllocatedNodes() {
+        return this.top.get();
+    }
+
+    /**
+     * Fields of CHUNK_SIZE nodes. Immutable references, so a chunk is safely published through its final fields.
+     */
+    private static final class Chunk {
+        private final int[] parent = new int[CHUNK_SIZE];
+        /** Handle of the cube of each node */
+        private final int[] handle = new int[CHUNK_SIZE];
+        /** Children range of each node */
+        private final int[] first = new int[CHUNK_SIZE];
+        private final int[] count = new int[CHUNK_SIZE];
+        /** All children before this index are not empty anymore */
+        private final int[] cursor = new int[CHUNK_SIZE];
+        /** Number of children that aren't finished yet */
+        private final int[] live = new int[CHUNK_SIZE];
+        private final byte[] status = new byte[CHUNK_SIZE];
+    }
+}
@@ -3,56 +3,100 @@ package implementation.solver;
 import abstractions.*;
 import abstractions.cube.*;
 import implementation.Puzzle;
+import implementation.cube.CubeMask;
 import implementation.cube.filter.CubeFilterFactory;
-import implementation.cube.sorter.ArrayCubeSorter;
-import implementation.cube.sorter.CubeSorterFactory;
+import implementation.solution.DynamicPuzzleSolution;
 
-import java.util.ConcurrentModificationException;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
- * Tree-based concurrent solver.
+ * Tree-based concurrent solver. Not a solver on its own: Each worker of a {@link ParallelTreeSearch} runs one and searches the
+ * subtrees it is handed through {@link #explore}. It is its own solution, see {@link #snapshot()} for a copy.
  */
-public class TreeSolver implements IPuzzleSolver, IPuzzleSolution {
+public class TreeSolver implements IPuzzleSolution {
     /* Immutable dimensions of this solver */
     public final int dimensionX, dimensionY, dimensionZ;
     /* Whether the first coordinate in this solution is an Edge */
     private final boolean isFirstCoordEdge;
+    /* Immutable symmetry of the puzzle, used to skip solutions that are just rotations of others */
+    private final PuzzleSymmetry symmetry;
 
-    /* Immutable reference to the array, but inner state is mutable */
-    private final boolean[] usedIDs;
+    /* Immutable reference to the bitmask of used cube ids, but inner state is mutable */
+    private final long[] usedMask;
     /* Immutable references, but inner state of each Node might change. Indexed by tree height. Not to be synchronized. */
     private final SolutionNode[] solution;
 
-    /* Mutable */
-    private TreeNode node;
+    /* Immutable reference to the tree shared by all solvers, but inner state is mutable */
+    private final TreeNodePool tree;
+    /* Immutable height of the deepest nodes in the shared tree. Their subtrees are searched by a single solver, see searchLocally */
+    private final int splitHeight;
+    /* Mutable state of searchLocally, indexed by tree height: Number of candidates and the next one to try */
+    private final int[] localLength, localIndex;
+    /* Mutable state of searchLocally, indexed by tree height: Number of cubes set by this solver before the cube on that height */
+    private final long[] localSets;
+    /* Immutable order in which the candidates of each position are tried */
+    private final CandidateOrder order;
+    /* Mutable source of the shuffles, only used for CandidateOrder.Random */
+    private final SplittableRandom random;
+    /* Immutable reference to the dead states shared by all solvers, or null if they aren't tracked */
+    private final DeadStateTable deadStates;
+    /* Mutable hash of the cubes set so far, only maintained if deadStates is set */
+    private final FrontierHash frontier;
+    /* Immutable. Whether the search goes on after a solution to find all of them, see ParallelTreeSearch#enumerate */
+    private final boolean allSolutions;
+    /* Mutable buffer for the packed triangles of a solution, allocated on first use by isSymmetryLeader */
+    private int[] packed = null;
+
+    /* Mutable. Current node in the tree and its height */
+    private int node = TreeNodePool.NONE, height = -1;
     /* Mutable counters, used for logging */
-    private long sets = 0, expands = 0, undos = 0;
+    private long sets = 0, expands = 0, undos = 0, pruned = 0;
+    /* Mutable. Value of "sets" at which explore() cuts the search off, see ParallelTreeSearch.setBudget */
+    private long limit = Long.MAX_VALUE;
+    /* Mutable iteration counter, the search checks whether it has been stopped whenever it is a multiple of StopToken.POLL_INTERVAL */
+    private int polls = 0;
 
-    protected TreeSolver(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICube[]> cubeMap, Coordinate[] coords) {
+    /**
+     * @param sorterMap Sorters for each cube type. They are cloned, so all solvers created from the same map share their query index.
+     * @param tree Tree to search, shared by all solvers working on the same puzzle
+     * @param splitDepth Number of cubes that are placed through the shared tree, the rest is searched locally
+     * @param order Order in which the candidates of each position are tried. All solvers sharing a tree have to use the same one
+     * @param seed Seed of the shuffles for {@link CandidateOrder#Random}, ignored by the other orders
+     * @param deadStates Table of dead states shared by all solvers searching the same tree, or null to not track them
+     * @param allSolutions Whether to report each solution to the search and go on, instead of stopping at the first one. Rotations
+     *                     of a solution are solutions of their own then, so the symmetry isn't used to skip them
+     */
+    protected TreeSolver(int dimensionX, int dimensionY, int dimensionZ, EnumMap<CubeType, ICubeSorter> sorterMap, Coordinate[] coords, TreeNodePool tree, int splitDepth, CandidateOrder order, long seed, DeadStateTable deadStates, boolean allSolutions) {
         this.dimensionX = dimensionX;
         this.dimensionY = dimensionY;
         this.dimensionZ = dimensionZ;
-        this.usedIDs = new boolean[dimensionX * dimensionY * dimensionZ + 1];
+        this.usedMask = CubeMask.create(dimensionX * dimensionY * dimensionZ);
         this.solution = new SolutionNode[dimensionX * dimensionY * dimensionZ];
-
-        this.isFirstCoordEdge = this.initSolution(coords, cubeMap);
-    }
-
-    protected void syncStartingNode(TreeSolver original, int number) {
-        // Makes sure each solver starts on a different branch
-        this.node = original.node.children[number % original.node.children.length];
-        this.node.status = TreeNode.Status.BeingPopulated;
-        this.solution[this.node.getHeight()].set(this.node.getCube());
-        this.sets++;
+        this.tree = tree;
+        this.splitHeight = splitDepth - 1;
+        this.localLength = new int[this.solution.length];
+        this.localIndex = new int[this.solution.length];
+        this.localSets = new long[this.solution.length + 1];
+        this.order = order;
+        this.random = new SplittableRandom(seed);
+        this.deadStates = deadStates;
+        this.frontier = deadStates == null ? null : new FrontierHash(dimensionX, dimensionY, dimensionZ);
+        this.allSolutions = allSolutions;
+
+        this.symmetry = new PuzzleSymmetry(dimensionX, dimensionY, dimensionZ);
+        this.isFirstCoordEdge = this.initSolution(coords, sorterMap);
+        if(this.isFirstCoordEdge && !allSolutions && !this.symmetry.isTransitiveOnCorners()) this.banFirstCornerCube();
     }
 
-    private boolean initSolution(Coordinate[] coords, EnumMap<CubeType, ICube[]> cubeMap) {
+    private boolean initSolution(Coordinate[] coords, EnumMap<CubeType, ICubeSorter> sharedSorterMap) {
         SolutionNode[][][] tmp = new SolutionNode[dimensionX][dimensionY][dimensionZ];
 
-        var sorterMap = new EnumMap<CubeType, ArrayCubeSorter>(CubeType.class);
-        for (var entry : cubeMap.entrySet()) {
-            sorterMap.put(entry.getKey(), CubeSorterFactory.from(entry.getValue(), entry.getKey()));
+        var sorterMap = new EnumMap<CubeType, ICubeSorter>(CubeType.class);
+        for (var entry : sharedSorterMap.entrySet()) {
+            sorterMap.put(entry.getKey(), entry.getValue().cloneSorter());
         }
 
         boolean isFirstCoordEdge = false;
@@ -67,11 +111,12 @@ public class TreeSolver implements IPuzzleSolver, IPuzzleSolution {
             if(c.z() == dimensionZ - 1) f.setSide(ICube.Side.Up, Triangle.None);
 
             CubeType type = CubeType.get(f.getTriangles());
-            ArrayCubeSorter s = sorterMap.get(type);
+            ICubeSorter s = sorterMap.get(type);
             if(i == 0 && type == CubeType.ThreeEdge) isFirstCoordEdge = true;
 
             this.solution[i] = new SolutionNode(c, f, s);
             tmp[c.x()][c.y()][c.z()] = this.solution[i];
+            if(i > 0) this.solution[i - 1].next = this.solution[i];
         }
 
         for (int x = 0; x < dimensionX; x++) {
@@ -87,100 +132,287 @@ public class TreeSolver implements IPuzzleSolver, IPuzzleSolution {
                 }
             }
         }
+        if(this.order == CandidateOrder.Rarity) {
+            for (SolutionNode n : this.solution) {
+                n.countExposures();
+            }
+        }
 
         return isFirstCoordEdge;
     }
 
-    @Override
-    public void prepare() {
-        this.node = new TreeNode();
-        if(isFirstCoordEdge && (dimensionX == dimensionY || dimensionY == dimensionZ || dimensionX == dimensionZ)) {
-            ICube[] cubes = this.solution[0].sorter.matchingAny(this.solution[0].filter);
-            this.node.populate(cubes);
-        }else {
-            expandCurrentNode();
+    /**
+     * Any solution can be rotated so that the corner cube with the lowest id sits on one of the corner representatives,
+     * so that cube is banned from all other corners. Equal cubes aren't banned, so the dead states have to tell them apart, see
+     * {@link FrontierHash#ban}.
+     */
+    private void banFirstCornerCube() {
+        int id = CubeMask.first(this.solution[0].sorter.candidates(this.solution[0].filter));
+        if(id < 0) return;
+        if(this.frontier != null) this.frontier.ban(id);
+
+        List<Coordinate> corners = this.symmetry.corners();
+        List<Coordinate> representatives = this.symmetry.cornerRepresentatives();
+        for (SolutionNode n : this.solution) {
+            if(corners.contains(n.coordinate) && !representatives.contains(n.coordinate)) {
+                n.banned = CubeMask.create(dimensionX * dimensionY * dimensionZ);
+                CubeMask.set(n.banned, id);
+            }
         }
     }
 
-    @Override
-    public IPuzzleSolution solve() throws PuzzleNotSolvableException {
-        return solveConcurrent();
+    /**
+     * Populates the root of the shared tree. Only called on the first solver of a search, before any worker starts.
+     */
+    void prepare() {
+        this.node = TreeNodePool.ROOT;
+        this.height = -1;
+        if(isFirstCoordEdge && !this.allSolutions && this.symmetry.isTransitiveOnCorners()) {
+            // Every corner can be rotated onto the first one, so any one corner cube can be fixed there
+            ICube[] cubes = this.symmetry.canonical(this.solution[0].coordinate, this.solution[0].sorter.matchingAny(this.solution[0].filter));
+            if(this.order == CandidateOrder.Random) this.shuffle(cubes, cubes.length);
+            this.tree.populate(this.node, cubes, cubes.length);
+        }else {
+            SolutionNode first = this.solution[0];
+            int length = first.matching();
+            this.tree.populate(this.node, first.candidates, length);
+            expands++;
+        }
     }
 
-    @Override
-    public IPuzzleSolution solveConcurrent() throws PuzzleNotSolvableException {
-        System.out.println("Starting node: " + this.node);
+    /**
+     * Searches the subtree below the given node, which has to be claimed by the caller. Only nodes claimed by this call are
+     * entered, so each node is searched by exactly one task. While "search" has idle workers, the untouched children of the
+     * current node are handed to it.
+     * Returns true if a solution has been found, in which case this solver stays on it. If all solutions are searched,
+     * each one is reported to "search" instead and false is returned once the subtree is done.
+     */
+    boolean explore(int start, int startHeight, ParallelTreeSearch search) {
+        this.moveTo(start, startHeight);
 
         int maxHeight = this.solution.length - 1;
-        do {
-            if(Thread.interrupted()) {
-                if(Puzzle.LOG) System.out.println("Got interrupted, exiting!");
-                return null;
+        while((++this.polls & StopToken.POLL_MASK) != 0 || !search.isStopped()) {
+            if(this.height == maxHeight) {
+                if(!this.allSolutions) return true;
+                search.report(this);
+                this.tree.setSearched(this.node);
+                if(this.node == start) {
+                    this.tree.leave(this.node);
+                    return false;
+                }
+                this.undo();
+                continue;
+            }
+            if(this.sets >= this.limit) {
+                search.cutOff();
+                return false;
             }
-            expandCurrentNode();
-            setNextNode();
-        } while(this.node.getHeight() < maxHeight);
 
-        return this;
+            if(this.tree.isBeingPopulated(this.node)) {
+                SolutionNode next = this.solution[this.height + 1];
+                int length = next.matching(); // May replace the candidate buffer
+                this.expands++;
+                // Nodes at the split depth don't get shared, and neither do nodes that would exceed the memory budget of the tree
+                if(this.height >= this.splitHeight || !this.tree.tryPopulate(this.node, next.candidates, length)) {
+                    if(this.searchLocally(length, search)) return true;
+                    if(search.isStopped()) return false; // Not searched completely
+                    this.tree.setSearched(this.node);
+                }
+            }
+
+            int nextNode = this.tree.claimEmpty(this.node);
+            if(nextNode != TreeNodePool.NONE) {
+                search.split(this.node, this.height);
+                this.descend(nextNode);
+                if(this.isPruned()) {
+                    this.tree.setSearched(this.node);
+                    this.undo();
+                }
+            } else if(this.node == start) { // Nothing left to do in this subtree
+                this.tree.leave(this.node);
+                return false;
+            } else {
+                this.undo();
+            }
+        }
+        return false;
     }
 
-    public void expandCurrentNode() {
-        if(this.node.isBeingPopulated()) {
-            this.node.populate(this.solution[this.node.getHeight() + 1].matching());
-            expands++;
+    /**
+     * Searches the subtree below the current node depth-first without adding anything to the tree, so only the current path is kept.
+     * The "length" candidates of the next height have to be in its buffer already.
+     * Returns true if a solution has been found, in which case this solver stays on it. If all solutions are searched,
+     * each one is reported to "search" instead.
+     */
+    private boolean searchLocally(int length, ParallelTreeSearch search) {
+        int base = this.height, maxHeight = this.solution.length - 1;
+        this.localLength[base + 1] = length;
+        this.localIndex[base + 1] = 0;
+        this.localSets[base + 1] = this.sets;
+
+        while((++this.polls & StopToken.POLL_MASK) != 0 || !search.isStopped()) {
+            if(this.sets >= this.limit) {
+                search.cutOff();
+                return false;
+            }
+            int h = this.height + 1;
+            if(this.localIndex[h] < this.localLength[h]) {
+                SolutionNode n = this.solution[h];
+                this.localSets[h + 1] = this.sets;
+                n.set(n.candidates[this.localIndex[h]++]);
+                this.height = h;
+                this.sets++;
+                if(h == maxHeight) {
+                    if(!this.allSolutions) return true;
+                    search.report(this);
+                    n.unset();
+                    this.height--;
+                    this.undos++;
+                    continue;
+                }
+                if(this.isPruned()) {
+                    n.unset();
+                    this.height--;
+                    this.undos++;
+                    continue;
+                }
+
+                this.localLength[h + 1] = this.solution[h + 1].matching();
+                this.localIndex[h + 1] = 0;
+                this.expands++;
+            } else if(this.height == base) { // Nothing left to do in this subtree
+                this.setDead(this.sets - this.localSets[base + 1]);
+                return false;
+            } else {
+                this.setDead(this.sets - this.localSets[this.height + 1]);
+                this.solution[this.height].unset();
+                this.height--;
+                this.undos++;
+            }
         }
+        return false;
     }
 
     /**
-     * Traverses the tree down one level.
+     * Shuffles the first "length" of the given cubes (Fisher-Yates).
      */
-    public void setNextNode() throws PuzzleNotSolvableException {
-        TreeNode nextNode = this.node.getNext();
-        if(nextNode == null) { // Either this node is dead or all children are already being processed by another thread
-            this.undo();
-            this.setNextNode();
-        } else {
-            if(Puzzle.DEBUG && !nextNode.status.eligible) throw new ConcurrentModificationException();
-            this.node = nextNode;
-            this.solution[this.node.getHeight()].set(this.node.getCube());
+    private void shuffle(ICube[] cubes, int length) {
+        for (int i = length - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            ICube tmp = cubes[i];
+            cubes[i] = cubes[j];
+            cubes[j] = tmp;
+        }
+    }
+
+    /**
+     * Returns a copy of the solution this solver is on, which stays valid while the search goes on.
+     */
+    IPuzzleSolution snapshot() {
+        DynamicPuzzleSolution copy = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
+        for (SolutionNode n : this.solution) {
+            copy.set(n.coordinate, n.cube);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns whether the solution this solver is on comes first among its rotations, see {@link PuzzleSymmetry#isLeader(int[])}.
+     */
+    boolean isSymmetryLeader() {
+        if(this.packed == null) this.packed = new int[this.solution.length];
+        for (SolutionNode n : this.solution) {
+            this.packed[this.symmetry.index(n.coordinate)] = n.cube.getPackedTriangles();
+        }
+        return this.symmetry.isLeader(this.packed);
+    }
+
+    /**
+     * Lets this solver set the given number of cubes from now on, after which it cuts the search off.
+     */
+    void setBudget(long budget) {
+        this.limit = budget >= Long.MAX_VALUE - this.sets ? Long.MAX_VALUE : this.sets + budget;
+    }
+
+    /**
+     * Moves this solver onto the given node, so exactly the cubes on the path from the root to it are set.
+     */
+    private void moveTo(int target, int targetHeight) {
+        for (int h = this.height; h >= 0; h--) {
+            this.solution[h].unset();
+        }
+
+        this.node = target;
+        this.height = targetHeight;
+        for (int h = targetHeight, n = target; h >= 0; h--, n = this.tree.getParent(n)) {
+            this.solution[h].set(this.tree.getCube(n));
             this.sets++;
         }
     }
 
-    private void undo() {
-        this.solution[this.node.getHeight()].unset(); // Will crash if on root node (root.getHeight() = -1)
-        this.node.validate();
-        this.node = this.node.getParent();
-        this.undos++;
+    /**
+     * Returns true if the cubes set so far can't lead to a solution: Either forward checking is enabled and a neighbor of the
+     * last placed cube has no free candidates left, or the same frontier has been searched before.
+     */
+    private boolean isPruned() {
+        if(Puzzle.FORWARD_CHECKING && !this.solution[this.height].neighborsHaveCandidates()) return true;
+        if(this.deadStates != null && this.deadStates.contains(this.frontier.get())) {
+            this.pruned++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that the cubes set so far can't lead to a solution, because all candidates for the next position have been searched.
+     * States that took fewer than {@link DeadStateTable#MIN_WORK} cubes to search are cheaper to search again than to look up.
+     */
+    private void setDead(long work) {
+        if(this.deadStates != null && work >= DeadStateTable.MIN_WORK) this.deadStates.add(this.frontier.get());
+    }
+
+    private void descend(int nextNode) {
+        this.node = nextNode;
+        this.height++;
+        this.solution[this.height].set(this.tree.getCube(this.node));
+        this.sets++;
     }
 
-    private boolean isFree(Integer cube) {
-        return !this.usedIDs[cube];
+    /**
+     * Goes back up to the parent of the current node. explore() never calls this on the node it started on, so there always is one.
+     */
+    private void undo() {
+        this.solution[this.height].unset();
+        int parent = this.tree.getParent(this.node);
+        this.tree.leave(this.node);
+        this.node = parent;
+        this.height--;
+        this.undos++;
     }
 
     /* temporary counters to measure difference between logging calls */
-    private long old_sets = 0, old_expands = 0, old_undos = 0;
+    private long old_sets = 0, old_expands = 0, old_undos = 0, old_pruned = 0;
 
-    @Override
+    /**
+     * Returns the current status of this solver and its progress since the last call. May be called from another thread.
+     */
     public String getCurrentStatus() {
         long diff_sets = sets - old_sets;
         long diff_expands = expands - old_expands;
         long diff_undos = undos - old_undos;
+        long diff_pruned = pruned - old_pruned;
 
         old_sets = sets;
         old_expands = expands;
         old_undos = undos;
+        old_pruned = pruned;
 
+        if(this.node == TreeNodePool.NONE) return "Idle";
         int m = dimensionX * dimensionY * dimensionZ;
-        int h = Math.min(m, this.node.getHeight());
+        int h = Math.max(0, Math.min(m - 1, this.height));
         Coordinate c = this.solution[h].coordinate;
-        return String.format("[%d,%d,%d] Height %d/%d with [%d set, %d expand, %d undo] per second",
-                c.x(), c.y(), c.z(), h, m, diff_sets, diff_expands, diff_undos);
-    }
-
-    @Override
-    public boolean canRunConcurrent() {
-        return true;
+        return String.format("[%d,%d,%d] Height %d/%d with [%d set, %d expand, %d undo, %d pruned] per second",
+                c.x(), c.y(), c.z(), h, m, diff_sets, diff_expands, diff_undos, diff_pruned);
     }
 
     @Override
@@ -217,198 +449,180 @@ public class TreeSolver implements IPuzzleSolver, IPuzzleSolution {
     private class SolutionNode {
         private final Coordinate coordinate;
         private final ICubeFilter filter;
-        private final ArrayCubeSorter sorter;
+        private final ICubeSorter sorter;
         /** Neighboring nodes, indexed by Side.ordinal() */
         private final SolutionNode[] neighbors = new SolutionNode[6];
         private ICube cube = null;
+        /** Reusable buffer for the candidates of this node, grows if necessary */
+        private ICube[] candidates = new ICube[16];
+        /** Cubes that may not be placed here (see {@link PuzzleSymmetry}), or null */
+        private long[] banned = null;
+        /** Buffer for the used cubes combined with the banned ones */
+        private long[] excluded = null;
+        /** Node following this one in the order of the coordinates, or null */
+        private SolutionNode next = null;
+        /** Buffers to sort the candidates (see {@link CandidateOrder}), allocated on first use */
+        private long[] keys = null;
+        private ICube[] sorted = null;
+        /**
+         * Only used for {@link CandidateOrder#Rarity}. Indexed by side and the triangle a neighbor needs on the opposite side:
+         * The number of cubes of the type of the neighbor on that side that have this triangle there, if nothing else is set around it.
+         */
+        private int[][] exposures = null;
 
-        private SolutionNode(Coordinate coordinate, ICubeFilter filter, ArrayCubeSorter sorter) {
+        private SolutionNode(Coordinate coordinate, ICubeFilter filter, ICubeSorter sorter) {
             this.coordinate = coordinate;
             this.filter = filter;
             this.sorter = sorter;
         }
 
         /**
-         * Returns all cubes that match into this node
+         * Writes all free cubes that match into this node into the candidate buffer and returns their number.
          */
-        private ICube[] matching() {
-            return this.sorter.matching(this.filter, TreeSolver.this::isFree);
-        }
-
-        private void set(ICube cube) {
-            assert this.filter.match(cube);
-
-            if(this.cube != null) TreeSolver.this.usedIDs[this.cube.getIdentifier()] = false;
-            TreeSolver.this.usedIDs[cube.getIdentifier()] = true;
-            this.cube = cube;
-
-            for (int i = 0; i < 6; i++) {
-                SolutionNode neighbor = this.neighbors[i];
-                if(neighbor != null) {
-                    neighbor.filter.setSide(ICube.Side.getOpposite(i), cube.getMatchingTriangle(i));
+        private int matching() {
+            long[] usedMask = TreeSolver.this.usedMask;
+            if(this.banned != null) {
+                if(this.excluded == null) this.excluded = new long[usedMask.length];
+                for (int w = 0; w < usedMask.length; w++) {
+                    this.excluded[w] = usedMask[w] | this.banned[w];
                 }
+                usedMask = this.excluded;
             }
-        }
 
-        private void unset() {
-            if(this.cube != null) TreeSolver.this.usedIDs[this.cube.getIdentifier()] = false;
-            this.cube = null;
-
-            for (int i = 0; i < 6; i++) {
-                SolutionNode neighbor = this.neighbors[i];
-                if(neighbor != null) {
-                    neighbor.filter.setSide(ICube.Side.getOpposite(i), (byte) 5);
-                }
+            int length = this.sorter.matchingInto(this.filter, usedMask, this.candidates);
+            if(length > this.candidates.length) {
+                this.candidates = new ICube[length];
+                this.sorter.matchingInto(this.filter, usedMask, this.candidates);
             }
+            if(TreeSolver.this.order == CandidateOrder.Random) TreeSolver.this.shuffle(this.candidates, length);
+            else if(TreeSolver.this.order != CandidateOrder.Sorter && length > 1) this.sortCandidates(length);
+            return length;
         }
-    }
-
-    /**
-     * Each node has exactly one parent and n children, that are populated on demand later. Only one thread may ever populate the same node at the same time.
-     * All {@link TreeSolver}s share the same root node. Node access is synchronized, only one thread may have write access at a time. Reading is not synchronized, however.
-     */
-    public static class TreeNode {
-        private final int height;
-        private final ICube cube;
-        private final TreeNode parent;
-        private TreeNode[] children = null;
-        private Status status;
 
         /**
-         * Constructor for the root node which doesn't have a parent or any data.
+         * Sorts the first "length" candidates by their score, see {@link #score(ICube)}. Candidates with the same score keep their order.
          */
-        public TreeNode() {
-            this.cube = null;
-            this.parent = null;
-            this.height = -1;
-            this.status = Status.BeingPopulated;
-        }
-
-        /**
-         * Internal constructor for creating a child node
-         */
-        private TreeNode(TreeNode parent, ICube cube) {
-            this.cube = cube;
-            this.parent = parent;
-            this.height = parent.height + 1;
-            this.status = Status.Empty;
-        }
-
-        public TreeNode getParent() {
-            return parent;
-        }
-
-        public int getHeight() {
-            return height;
-        }
+        private void sortCandidates(int length) {
+            if(this.keys == null || this.keys.length < this.candidates.length) {
+                this.keys = new long[this.candidates.length];
+                this.sorted = new ICube[this.candidates.length];
+            }
+            for (int i = 0; i < length; i++) {
+                this.keys[i] = ((long) this.score(this.candidates[i]) << 32) | i;
+            }
+            Arrays.sort(this.keys, 0, length);
+            for (int i = 0; i < length; i++) {
+                this.sorted[i] = this.candidates[(int) this.keys[i]];
+            }
 
-        public ICube getCube() {
-            return cube;
+            ICube[] tmp = this.candidates;
+            this.candidates = this.sorted;
+            this.sorted = tmp;
         }
 
         /**
-         * Returns the oldest child node of this tree that is not already being populated by another thread, or null if no such node exists
+         * Returns the score of the given candidate for this node according to the order of the solver. Lower scores are tried first.
          */
-        public TreeNode getNext() {
-            assert this.children != null;
-
-            for (TreeNode n : this.children) {
-                synchronized (n) { // Only one thread at a time may have access to this node
-                    if (n.status.eligible) {
-                        if (n.status == Status.Empty) n.status = Status.BeingPopulated;
-                        return n;
+        private int score(ICube cube) {
+            int score = 0;
+            switch (TreeSolver.this.order) {
+                case Lookahead -> {
+                    if(this.next == null || this.next.cube != null || !this.isNeighbor(this.next)) return 0;
+                    this.set(cube);
+                    int count = this.next.sorter.countCubes(this.next.filter, TreeSolver.this.usedMask);
+                    this.unset();
+                    score = count == 0 ? Integer.MAX_VALUE : -count;
+                }
+                case LeastConstraining -> {
+                    this.set(cube);
+                    for (SolutionNode neighbor : this.neighbors) {
+                        if(neighbor == null || neighbor.cube != null) continue;
+                        int count = neighbor.sorter.countCubes(neighbor.filter, TreeSolver.this.usedMask);
+                        if(count == 0) {
+                            score = Integer.MAX_VALUE;
+                            break;
+                        }
+                        score -= count;
+                    }
+                    this.unset();
+                }
+                case Rarity -> {
+                    for (int i = 0; i < 6; i++) {
+                        if(this.neighbors[i] != null && this.neighbors[i].cube == null) score -= this.exposures[i][cube.getMatchingTriangle(i)];
                     }
                 }
             }
-            return null;
+            return score;
         }
 
-        /**
-         * Populates this node with the given values. The next generation will consist of as many nodes as values are provided.
-         * If no values are provided the node is marked as dead.
-         * This function may only be called on this node if it is currently being populated.
-         */
-        public void populate(ICube[] cubes) {
-            assert this.status == Status.BeingPopulated;
-
-            if (cubes.length == 0) {
-                setDead();
-                return;
+        private boolean isNeighbor(SolutionNode node) {
+            for (SolutionNode neighbor : this.neighbors) {
+                if(neighbor == node) return true;
             }
-
-            //synchronized (this) {
-                this.children = new TreeNode[cubes.length];
-                for (int i = 0; i < cubes.length; i++) {
-                    this.children[i] = new TreeNode(this, cubes[i]);
-                }
-                this.status = Status.Populated;
-            //}
+            return false;
         }
 
         /**
-         * Returns whether this node is being populated.
+         * Fills {@link #exposures}, see there.
          */
-        public boolean isBeingPopulated() {
-            return this.status == Status.BeingPopulated;
+        private void countExposures() {
+            long[] noneUsed = CubeMask.create(0);
+            this.exposures = new int[6][Triangle.getValues().length];
+            for (int i = 0; i < 6; i++) {
+                SolutionNode neighbor = this.neighbors[i];
+                if(neighbor == null) continue;
+                ICubeFilter f = neighbor.filter.cloneFilter();
+                for (int t = 0; t < this.exposures[i].length; t++) {
+                    f.setSide(ICube.Side.getOpposite(i), (byte) t);
+                    this.exposures[i][t] = neighbor.sorter.countCubes(f, noneUsed);
+                }
+            }
         }
 
         /**
-         * Returns whether this node is dead, meaning it doesn't have any live children.
+         * Returns whether every empty neighbor still has at least one free cube that fits into it.
          */
-        public boolean isDead() {
-            return this.status == Status.Dead;
+        private boolean neighborsHaveCandidates() {
+            for (SolutionNode neighbor : this.neighbors) {
+                if(neighbor != null && neighbor.cube == null && !neighbor.sorter.hasCubes(neighbor.filter, TreeSolver.this.usedMask)) return false;
+            }
+            return true;
         }
 
-        /**
-         * Marks this node as dead. All references to its children will be removed and its parent will be notified of its death.
-         */
-        protected void setDead() {
-            synchronized (this) {
-                this.children = new TreeNode[0];
-                this.status = Status.Dead;
+        private void set(ICube cube) {
+            assert this.filter.match(cube);
+
+            FrontierHash frontier = TreeSolver.this.frontier;
+            if(this.cube != null) {
+                CubeMask.clear(TreeSolver.this.usedMask, this.cube.getIdentifier());
+                if(frontier != null) frontier.unset(this.coordinate.x(), this.coordinate.y(), this.coordinate.z(), this.cube);
             }
-        }
+            CubeMask.set(TreeSolver.this.usedMask, cube.getIdentifier());
+            this.cube = cube;
+            if(frontier != null) frontier.set(this.coordinate.x(), this.coordinate.y(), this.coordinate.z(), cube);
 
-        /**
-         * Checks whether this node is still alive
-         */
-        public synchronized void validate() {
-            if (this.children == null || this.children.length == 0) return;
-            for (TreeNode n : this.children) {
-                if (!n.isDead()) return;
+            for (int i = 0; i < 6; i++) {
+                SolutionNode neighbor = this.neighbors[i];
+                if(neighbor != null) {
+                    neighbor.filter.setSide(ICube.Side.getOpposite(i), cube.getMatchingTriangle(i));
+                }
             }
-            this.setDead();
         }
 
-        private enum Status {
-            /**
-             * This node has not been explored yet
-             */
-            Empty(true),
-            /**
-             * This node is currently being explored; No access to its inner state until it is populated
-             */
-            BeingPopulated(false),
-            /**
-             * This node has been populated
-             */
-            Populated(true),
-            /**
-             * This node is dead; All references to its children are gone, there is nothing left to do here
-             */
-            Dead(false);
-
-            public final boolean eligible;
-
-            Status(boolean eligible) {
-                this.eligible = eligible;
+        private void unset() {
+            if(this.cube != null) {
+                CubeMask.clear(TreeSolver.this.usedMask, this.cube.getIdentifier());
+                if(TreeSolver.this.frontier != null) TreeSolver.this.frontier.unset(this.coordinate.x(), this.coordinate.y(), this.coordinate.z(), this.cube);
             }
-        }
-    }
+            this.cube = null;
 
-    @Override
-    public IPuzzleSolver deepClone() {
-        throw new UnsupportedOperationException();
+            for (int i = 0; i < 6; i++) {
+                SolutionNode neighbor = this.neighbors[i];
+                if(neighbor != null) {
+                    neighbor.filter.setSide(ICube.Side.getOpposite(i), (byte) 5);
+                }
+            }
+        }
     }
 
     @Override
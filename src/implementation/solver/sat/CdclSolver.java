@@ -0,0 +1,468 @@
+package implementation.solver.sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A conflict driven clause learning SAT solver: Two watched literals for propagation, first UIP clause learning with
+ * minimization, VSIDS branching with phase saving, Luby restarts and clause deletion by literal block distance.
+ * <br>
+ * Internally, literal 2v is variable v (counted from 0) and 2v+1 its negation.
+ */
+public class CdclSolver {
+    private static final byte UNDEF = 0, TRUE = 1, FALSE = -1;
+    /** Number of conflicts in the shortest run between two restarts */
+    private static final int RESTART_UNIT = 100;
+    /** Conflicts before the first clause deletion, and how much longer every following interval is */
+    private static final int REDUCE_FIRST = 2000, REDUCE_INCREMENT = 300;
+    private static final double VAR_DECAY = 0.95;
+
+    /* Immutable */
+    private final int numVariables;
+
+    /* Mutable. Assignment of each variable, the level it was assigned on and the clause that implied it (null for decisions) */
+    private final byte[] assigns;
+    private final int[] level;
+    private final Clause[] reason;
+    /* Mutable. The last value of each variable, which it gets again when it's chosen next, unless its polarity is fixed */
+    private final boolean[] polarity, fixedPolarity;
+
+    /* Mutable. Assigned literals in order, the index of the next one to propagate and where each decision level starts */
+    private final int[] trail, trailLimit;
+    private int trailSize = 0, propagated = 0, decisionLevel = 0;
+
+    /* Mutable. Clauses watching each literal, which are looked at once it becomes false */
+    private final Clause[][] watches;
+    private final int[] watchSize;
+    private final List<Clause> learnts = new ArrayList<>();
+    private boolean unsatisfiable = false;
+
+    /* Mutable. Activity of each variable and a max heap of the variables by activity. heapIndex is -1 for variables outside the heap */
+    private final double[] activity;
+    private double activityIncrement = 1;
+    private final int[] heap, heapIndex;
+    private int heapSize = 0;
+
+    /* Temporaries of analyze() */
+    private final boolean[] seen;
+    private final int[] learntBuffer, clearBuffer, levelStamp;
+    private int learntSize = 0, stamp = 0;
+
+    /* Mutable counters, used for logging */
+    private volatile long conflicts = 0, decisions = 0, propagations = 0;
+
+    public CdclSolver(CnfFormula formula) {
+        this.numVariables = formula.getNumVariables();
+        int n = this.numVariables;
+        this.assigns = new byte[n];
+        this.level = new int[n];
+        this.reason = new Clause[n];
+        this.polarity = new boolean[n];
+        this.fixedPolarity = new boolean[n];
+        this.trail = new int[n];
+        this.trailLimit = new int[n + 1];
+        this.watches = new Clause[2 * n][];
+        this.watchSize = new int[2 * n];
+        this.activity = new double[n];
+        this.heap = new int[n];
+        this.heapIndex = new int[n];
+        this.seen = new boolean[n];
+        this.learntBuffer = new int[n];
+        this.clearBuffer = new int[n];
+        this.levelStamp = new int[n + 1];
+
+        for (int v = 0; v < n; v++) {
+            this.heapIndex[v] = -1;
+            this.heapInsert(v);
+        }
+        for (int[] clause : formula.getClauses()) {
+            this.addClause(clause);
+        }
+    }
+
+    private static int toLiteral(int dimacs) {
+        return dimacs > 0 ? 2 * (dimacs - 1) : 2 * (-dimacs - 1) + 1;
+    }
+
+    private byte value(int literal) {
+        byte a = this.assigns[literal >> 1];
+        return (literal & 1) == 0 ? a : (byte) -a;
+    }
+
+    private void addClause(int[] dimacs) {
+        if(this.unsatisfiable) return;
+
+        int[] literals = new int[dimacs.length];
+        int length = 0;
+        outer:
+        for (int d : dimacs) {
+            int l = toLiteral(d);
+            for (int i = 0; i < length; i++) {
+                if(literals[i] == l) continue outer;
+                if(literals[i] == (l ^ 1)) return; // Always satisfied
+            }
+            literals[length++] = l;
+        }
+
+        if(length == 0) {
+            this.unsatisfiable = true;
+        } else if(length == 1) {
+            if(this.value(literals[0]) == FALSE) this.unsatisfiable = true;
+            else if(this.value(literals[0]) == UNDEF) this.assign(literals[0], null);
+        } else {
+            this.attach(new Clause(Arrays.copyOf(literals, length)));
+        }
+    }
+
+    /**
+     * Tries the given value first whenever the variable is chosen. Unless "fixed" is set, that is only until it gets assigned
+     * the other value, which it will get from then on. Variables start out preferring false.
+     */
+    public void setPolarity(int variable, boolean value, boolean fixed) {
+        this.polarity[variable - 1] = value;
+        this.fixedPolarity[variable - 1] = fixed;
+    }
+
+    /**
+     * Returns the value of the given variable in the model found by the last call to {@link #solve(BooleanSupplier)}.
+     */
+    public boolean isTrue(int variable) {
+        return this.assigns[variable - 1] == TRUE;
+    }
+
+    /**
+     * Searches a satisfying assignment. Returns TRUE if there is one, FALSE if there is none and null if "stop" returned true,
+     * which is asked every few hundred conflicts.
+     */
+    public Boolean solve(BooleanSupplier stop) {
+        if(this.unsatisfiable) return Boolean.FALSE;
+
+        int restarts = 0, reductions = 0;
+        long conflictsLeft = luby(restarts) * RESTART_UNIT, nextReduce = this.conflicts + REDUCE_FIRST;
+        while(true) {
+            Clause conflict = this.propagate();
+            if(conflict != null) {
+                long count = ++this.conflicts;
+                if(this.decisionLevel == 0) {
+                    this.unsatisfiable = true;
+                    return Boolean.FALSE;
+                }
+
+                int lbd = this.analyze(conflict);
+                int[] learnt = Arrays.copyOf(this.learntBuffer, this.learntSize);
+                this.cancelUntil(learnt.length == 1 ? 0 : this.level[learnt[1] >> 1]);
+                if(learnt.length == 1) {
+                    this.assign(learnt[0], null);
+                } else {
+                    Clause c = new Clause(learnt);
+                    c.lbd = lbd;
+                    this.attach(c);
+                    this.learnts.add(c);
+                    this.assign(learnt[0], c);
+                }
+                this.activityIncrement /= VAR_DECAY;
+                conflictsLeft--;
+
+                if((count & 0xFF) == 0 && stop.getAsBoolean()) return null;
+                if(count >= nextReduce) {
+                    this.reduceLearnts();
+                    nextReduce = count + REDUCE_FIRST + (long) REDUCE_INCREMENT * ++reductions;
+                }
+            } else if(conflictsLeft <= 0) {
+                conflictsLeft = luby(++restarts) * RESTART_UNIT;
+                this.cancelUntil(0);
+            } else {
+                int next = this.pickBranch();
+                if(next < 0) return Boolean.TRUE;
+                if((++this.decisions & 0xFFF) == 0 && stop.getAsBoolean()) return null;
+                this.trailLimit[++this.decisionLevel] = this.trailSize;
+                this.assign(next, null);
+            }
+        }
+    }
+
+    private void assign(int literal, Clause reason) {
+        int v = literal >> 1;
+        this.assigns[v] = (literal & 1) == 0 ? TRUE : FALSE;
+        this.level[v] = this.decisionLevel;
+        this.reason[v] = reason;
+        this.trail[this.trailSize++] = literal;
+    }
+
+    private void attach(Clause c) {
+        this.watch(c.literals[0], c);
+        this.watch(c.literals[1], c);
+    }
+
+    private void watch(int literal, Clause c) {
+        Clause[] ws = this.watches[literal];
+        int size = this.watchSize[literal];
+        if(ws == null) ws = this.watches[literal] = new Clause[4];
+        else if(size == ws.length) ws = this.watches[literal] = Arrays.copyOf(ws, size * 2);
+        ws[size] = c;
+        this.watchSize[literal] = size + 1;
+    }
+
+    /**
+     * Propagates all assignments on the trail. Returns a clause with only false literals, or null if there is none.
+     * The watched literals of each clause are its first two, the first one being the implied literal if the clause is a reason.
+     */
+    private Clause propagate() {
+        int start = this.propagated;
+        while(this.propagated < this.trailSize) {
+            int falseLiteral = this.trail[this.propagated++] ^ 1;
+            Clause[] ws = this.watches[falseLiteral];
+            int size = this.watchSize[falseLiteral], i = 0, j = 0;
+
+            while(i < size) {
+                Clause c = ws[i++];
+                if(c.deleted) continue;
+                int[] literals = c.literals;
+                if(literals[0] == falseLiteral) {
+                    literals[0] = literals[1];
+                    literals[1] = falseLiteral;
+                }
+                int first = literals[0];
+                if(this.value(first) == TRUE) {
+                    ws[j++] = c;
+                    continue;
+                }
+
+                boolean moved = false;
+                for (int k = 2; k < literals.length; k++) {
+                    if(this.value(literals[k]) != FALSE) {
+                        literals[1] = literals[k];
+                        literals[k] = falseLiteral;
+                        this.watch(literals[1], c);
+                        moved = true;
+                        break;
+                    }
+                }
+                if(moved) continue;
+
+                ws[j++] = c;
+                if(this.value(first) == FALSE) {
+                    while(i < size) ws[j++] = ws[i++];
+                    this.watchSize[falseLiteral] = j;
+                    this.propagated = this.trailSize;
+                    this.propagations += this.propagated - start;
+                    return c;
+                }
+                this.assign(first, c);
+            }
+            this.watchSize[falseLiteral] = j;
+        }
+        this.propagations += this.propagated - start;
+        return null;
+    }
+
+    /**
+     * Derives the first UIP clause of the given conflict into learntBuffer, the asserting literal first and a literal of the
+     * highest remaining level second. Returns its literal block distance.
+     */
+    private int analyze(Clause conflict) {
+        int pending = 0, literal = -1, index = this.trailSize - 1;
+        this.learntSize = 1;
+        do {
+            int[] literals = conflict.literals;
+            for (int k = literal == -1 ? 0 : 1; k < literals.length; k++) {
+                int q = literals[k], v = q >> 1;
+                if(this.seen[v] || this.level[v] == 0) continue;
+                this.bump(v);
+                this.seen[v] = true;
+                if(this.level[v] >= this.decisionLevel) pending++;
+                else this.learntBuffer[this.learntSize++] = q;
+            }
+            while(!this.seen[this.trail[index] >> 1]) index--;
+            literal = this.trail[index--];
+            conflict = this.reason[literal >> 1];
+            this.seen[literal >> 1] = false;
+            pending--;
+        } while(pending > 0);
+        this.learntBuffer[0] = literal ^ 1;
+
+        // Drops literals implied by the others
+        System.arraycopy(this.learntBuffer, 0, this.clearBuffer, 0, this.learntSize);
+        int size = 1;
+        for (int i = 1; i < this.learntSize; i++) {
+            int q = this.learntBuffer[i];
+            if(!this.isImplied(q >> 1)) this.learntBuffer[size++] = q;
+        }
+        for (int i = 1; i < this.learntSize; i++) {
+            this.seen[this.clearBuffer[i] >> 1] = false;
+        }
+        this.learntSize = size;
+
+        int highest = 1;
+        for (int i = 2; i < size; i++) {
+            if(this.level[this.learntBuffer[i] >> 1] > this.level[this.learntBuffer[highest] >> 1]) highest = i;
+        }
+        if(size > 1) {
+            int tmp = this.learntBuffer[1];
+            this.learntBuffer[1] = this.learntBuffer[highest];
+            this.learntBuffer[highest] = tmp;
+        }
+
+        this.stamp++;
+        int lbd = 0;
+        for (int i = 0; i < size; i++) {
+            int l = this.level[this.learntBuffer[i] >> 1];
+            if(this.levelStamp[l] != this.stamp) {
+                this.levelStamp[l] = this.stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+    /**
+     * Returns whether the given variable has been implied by literals that are all part of the learnt clause (or on level 0).
+     */
+    private boolean isImplied(int v) {
+        Clause r = this.reason[v];
+        if(r == null) return false;
+        for (int k = 1; k < r.literals.length; k++) {
+            int u = r.literals[k] >> 1;
+            if(!this.seen[u] && this.level[u] > 0) return false;
+        }
+        return true;
+    }
+
+    private void cancelUntil(int level) {
+        if(this.decisionLevel <= level) return;
+        for (int i = this.trailSize - 1; i >= this.trailLimit[level + 1]; i--) {
+            int literal = this.trail[i], v = literal >> 1;
+            this.assigns[v] = UNDEF;
+            this.reason[v] = null;
+            if(!this.fixedPolarity[v]) this.polarity[v] = (literal & 1) == 0;
+            this.heapInsert(v);
+        }
+        this.trailSize = this.trailLimit[level + 1];
+        this.propagated = this.trailSize;
+        this.decisionLevel = level;
+    }
+
+    /**
+     * Returns the literal to decide next, or -1 if all variables are assigned.
+     */
+    private int pickBranch() {
+        while(this.heapSize > 0) {
+            int v = this.heapRemoveMax();
+            if(this.assigns[v] == UNDEF) return 2 * v + (this.polarity[v] ? 0 : 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Deletes half of the learnt clauses, keeping those with a low literal block distance and those that are reasons right now.
+     */
+    private void reduceLearnts() {
+        this.learnts.sort(Comparator.comparingInt(c -> c.lbd));
+        List<Clause> kept = new ArrayList<>(this.learnts.size());
+        int half = this.learnts.size() / 2;
+        for (int i = 0; i < this.learnts.size(); i++) {
+            Clause c = this.learnts.get(i);
+            if(i < half || c.lbd <= 2 || this.isLocked(c)) kept.add(c);
+            else c.deleted = true; // Watchers get dropped lazily
+        }
+        this.learnts.clear();
+        this.learnts.addAll(kept);
+    }
+
+    private boolean isLocked(Clause c) {
+        int first = c.literals[0];
+        return this.reason[first >> 1] == c && this.value(first) == TRUE;
+    }
+
+    private void bump(int v) {
+        if((this.activity[v] += this.activityIncrement) > 1e100) {
+            for (int i = 0; i < this.numVariables; i++) {
+                this.activity[i] *= 1e-100;
+            }
+            this.activityIncrement *= 1e-100;
+        }
+        if(this.heapIndex[v] >= 0) this.heapUp(this.heapIndex[v]);
+    }
+
+    private void heapInsert(int v) {
+        if(this.heapIndex[v] >= 0) return;
+        this.heap[this.heapSize] = v;
+        this.heapIndex[v] = this.heapSize;
+        this.heapUp(this.heapSize++);
+    }
+
+    private int heapRemoveMax() {
+        int max = this.heap[0];
+        this.heapIndex[max] = -1;
+        int last = this.heap[--this.heapSize];
+        if(this.heapSize > 0) {
+            this.heap[0] = last;
+            this.heapIndex[last] = 0;
+            this.heapDown(0);
+        }
+        return max;
+    }
+
+    private void heapUp(int i) {
+        int v = this.heap[i];
+        while(i > 0) {
+            int parent = (i - 1) >> 1;
+            if(this.activity[this.heap[parent]] >= this.activity[v]) break;
+            this.heap[i] = this.heap[parent];
+            this.heapIndex[this.heap[i]] = i;
+            i = parent;
+        }
+        this.heap[i] = v;
+        this.heapIndex[v] = i;
+    }
+
+    private void heapDown(int i) {
+        int v = this.heap[i];
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= this.heapSize) break;
+            if(child + 1 < this.heapSize && this.activity[this.heap[child + 1]] > this.activity[this.heap[child]]) child++;
+            if(this.activity[this.heap[child]] <= this.activity[v]) break;
+            this.heap[i] = this.heap[child];
+            this.heapIndex[this.heap[i]] = i;
+            i = child;
+        }
+        this.heap[i] = v;
+        this.heapIndex[v] = i;
+    }
+
+    /**
+     * Returns the i-th element of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     */
+    private static long luby(int i) {
+        int size = 1, exponent = 0;
+        while(size < i + 1) {
+            exponent++;
+            size = 2 * size + 1;
+        }
+        while(size - 1 != i) {
+            size = (size - 1) >> 1;
+            exponent--;
+            i = i % size;
+        }
+        return 1L << exponent;
+    }
+
+    public String getStatus() {
+        return String.format("%d conflicts, %d decisions, %d propagations, %d learnt clauses", this.conflicts, this.decisions, this.propagations, this.learnts.size());
+    }
+
+    private static final class Clause {
+        private final int[] literals;
+        /** Number of distinct decision levels of the literals when the clause was learnt */
+        private int lbd = 0;
+        private boolean deleted = false;
+
+        private Clause(int[] literals) {
+            this.literals = literals;
+        }
+    }
+}
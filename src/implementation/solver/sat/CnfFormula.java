@@ -0,0 +1,90 @@
+package implementation.solver.sat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A formula in conjunctive normal form. Literals are written like in the DIMACS format: Variables are numbered from 1,
+ * a positive number is the variable itself and a negative number its negation.
+ */
+public class CnfFormula {
+    /** Up to this many literals, "at most one" is encoded pairwise */
+    private static final int PAIRWISE_LIMIT = 6;
+
+    private final List<int[]> clauses = new ArrayList<>();
+    private int numVariables = 0;
+
+    /**
+     * Returns a new variable.
+     */
+    public int newVariable() {
+        return ++this.numVariables;
+    }
+
+    public int getNumVariables() {
+        return this.numVariables;
+    }
+
+    public List<int[]> getClauses() {
+        return this.clauses;
+    }
+
+    /**
+     * Adds a clause, which is satisfied if at least one of the given literals is. The array is kept, so it must not be modified afterwards.
+     */
+    public void addClause(int... literals) {
+        for (int l : literals) {
+            if(l == 0 || Math.abs(l) > this.numVariables) throw new IllegalArgumentException("Unknown variable " + l);
+        }
+        this.clauses.add(literals);
+    }
+
+    /**
+     * Adds clauses so that at most one of the given literals is true. Longer lists use the sequential counter encoding,
+     * which only needs a linear number of clauses.
+     */
+    public void atMostOne(int... literals) {
+        if(literals.length <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < literals.length; i++) {
+                for (int j = i + 1; j < literals.length; j++) {
+                    this.addClause(-literals[i], -literals[j]);
+                }
+            }
+            return;
+        }
+
+        // s is true if one of the literals up to i is
+        int s = this.newVariable();
+        this.addClause(-literals[0], s);
+        for (int i = 1; i < literals.length - 1; i++) {
+            int next = this.newVariable();
+            this.addClause(-literals[i], next);
+            this.addClause(-s, next);
+            this.addClause(-literals[i], -s);
+            s = next;
+        }
+        this.addClause(-literals[literals.length - 1], -s);
+    }
+
+    /**
+     * Adds clauses so that exactly one of the given literals is true.
+     */
+    public void exactlyOne(int... literals) {
+        this.addClause(literals.clone());
+        this.atMostOne(literals);
+    }
+
+    /**
+     * Writes this formula in the DIMACS format, so it can be handed to external SAT solvers as well.
+     */
+    public void writeDimacs(Appendable out) throws IOException {
+        out.append("p cnf ").append(String.valueOf(this.numVariables)).append(' ').append(String.valueOf(this.clauses.size())).append('\n');
+        for (int[] clause : this.clauses) {
+            for (int l : clause) {
+                out.append(String.valueOf(l)).append(' ');
+            }
+            out.append("0\n");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package tooling;
 
 import implementation.Puzzle;
+import implementation.solver.Algorithm;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -14,6 +15,7 @@ public class Benchmark {
             String name = "";
             boolean shuffled = false, rotated = false;
             File inputFolder = null;
+            Algorithm algorithm = Algorithm.Default;
             for (String s : args) {
                 if(s.startsWith("-x=")) x = Integer.parseInt(s.substring(3));
                 else if(s.startsWith("-y=")) y = Integer.parseInt(s.substring(3));
@@ -27,6 +29,7 @@ public class Benchmark {
                 else if(s.startsWith("-name=")) name = s.substring(6);
                 else if(s.startsWith("-timeout=")) timeout = Integer.parseInt(s.substring(9));
                 else if(s.startsWith("-folder=")) inputFolder = new File(s.substring(8));
+                else if(s.startsWith("-algorithm=")) algorithm = Algorithm.valueOf(s.substring(11));
                 else {
                     System.err.printf("Unknown argument \"%s\"\n", s);
                 }
@@ -41,12 +44,11 @@ public class Benchmark {
                     fw.write("time,file\n");
 
                     for(File f : inputFolder.listFiles((file, s) -> s.endsWith(".txt"))) {
-                        Generator.clearArrayCubeSorterCache();
                         Puzzle p = new Puzzle();
                         System.out.println("Running test " + f.getName());
                         p.readInput(f.getAbsolutePath());
 
-                        double deltaT = Generator.doTesting(p.dimensionX, p.dimensionY, p.dimensionZ, p.cubes, timeout, f.getAbsolutePath());
+                        double deltaT = Generator.doTesting(p.dimensionX, p.dimensionY, p.dimensionZ, p.cubes, timeout, f.getAbsolutePath(), algorithm);
 
                         t += deltaT;
                         //System.out.println("Took " + deltaT + " seconds!");
@@ -69,7 +71,7 @@ public class Benchmark {
                                         System.out.println("Skipping " + (runs-i) + " runs due to timeout!");
                                         break;
                                     }
-                                    double tmp = Generator.doTesting(x, y, z, shuffled, rotated, timeout);
+                                    double tmp = Generator.doTesting(x, y, z, shuffled, rotated, timeout, algorithm);
                                     deltaT += tmp;
                                     fw.write(x + "," + y + "," + z + "," + i + "," + tmp + "," + x*y*z + "\n");
                                 }
@@ -85,7 +87,7 @@ public class Benchmark {
                 }
             }else {
                 for (int i = 0; i < runs; i++) {
-                    t += Generator.doTesting(x, y, z, shuffled, rotated, timeout);
+                    t += Generator.doTesting(x, y, z, shuffled, rotated, timeout, algorithm);
                 }
             }
 
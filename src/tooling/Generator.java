@@ -9,7 +9,7 @@ import abstractions.cube.ICubeFilter;
 import abstractions.cube.Triangle;
 import implementation.cube.CachedCube;
 import implementation.cube.filter.CubeFilterFactory;
-import implementation.cube.sorter.ArrayCubeSorter;
+import implementation.solver.Algorithm;
 import implementation.solver.SolverFactory;
 
 import java.io.File;
@@ -197,20 +197,27 @@ public class Generator {
     private static final ExecutorService solverExecutor = Executors.newFixedThreadPool(4);
 
     public static double doTesting(int dimX, int dimY, int dimZ, boolean shuffle, boolean rotate, int timeout) {
+        return doTesting(dimX, dimY, dimZ, shuffle, rotate, timeout, Algorithm.Default);
+    }
+
+    public static double doTesting(int dimX, int dimY, int dimZ, boolean shuffle, boolean rotate, int timeout, Algorithm algorithm) {
         System.out.printf("Generating puzzle: [%d, %d, %d] %s %s\n", dimX, dimY, dimZ, shuffle ? "shuffled" : "", rotate ? "rotated" : "");
         var cubes = generate(dimX, dimY, dimZ, shuffle, rotate).toArray(ICube[]::new);
-        return doTesting(dimX, dimY, dimZ, cubes, timeout, "result_files/selfcheck.in.txt");
+        return doTesting(dimX, dimY, dimZ, cubes, timeout, "result_files/selfcheck.in.txt", algorithm);
     }
 
     public static double doTesting(int dimX, int dimY, int dimZ, ICube[] cubes, int timeout, String fileIn) {
+        return doTesting(dimX, dimY, dimZ, cubes, timeout, fileIn, Algorithm.Default);
+    }
+
+    public static double doTesting(int dimX, int dimY, int dimZ, ICube[] cubes, int timeout, String fileIn, Algorithm algorithm) {
         System.out.printf("Got %d cubes...\n", cubes.length);
         IPuzzleSolution solution = null;
         try{
             //printMemoryStats();
-            clearArrayCubeSorterCache();
             System.out.println("--- Starting solver ---");
 
-            var s = SolverFactory.of(dimX, dimY, dimZ, cubes);
+            var s = SolverFactory.of(algorithm, dimX, dimY, dimZ, cubes);
 
             long var3 = System.currentTimeMillis();
             solution = s.solveWithTimeout(solverExecutor, observerExecutor, timeout);
@@ -266,10 +273,4 @@ public class Generator {
         System.out.printf("Used:      %04d Free: %04d\n", (instance.totalMemory() - instance.freeMemory()) / 1048576L, instance.freeMemory() / 1048576L);
         System.out.print ("--------------------------\n");
     }
-
-    protected static void clearArrayCubeSorterCache() {
-        for(int i = 0; i < 46656; i++) {
-            ArrayCubeSorter.queries[i] = null;
-        }
-    }
 }
@@ -0,0 +1,47 @@
+package tooling.analysis;
+
+import abstractions.PuzzleNotSolvableException;
+import implementation.Puzzle;
+import implementation.solver.SolverFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the solutions of puzzles, to grade how hard they are. More solutions make a puzzle easier.
+ * <br>
+ * Arguments: Input files, and optionally "-threads=n", "-symmetric" to count solutions that are rotations of each other once,
+ * "-out=file" to write all solutions into a file (only for a single input) and "-log" to print the progress every second.
+ */
+public class SolutionCount {
+    public static void main(String[] args) throws PuzzleNotSolvableException, IOException, InterruptedException {
+        int threads = SolverFactory.DEFAULT_PARALLELISM;
+        boolean collapseSymmetric = false, logging = false;
+        Path out = null;
+        List<String> files = new ArrayList<>();
+        for (String s : args) {
+            if(s.startsWith("-threads=")) threads = Integer.parseInt(s.substring(9));
+            else if(s.equals("-symmetric")) collapseSymmetric = true;
+            else if(s.equals("-log")) logging = true;
+            else if(s.startsWith("-out=")) out = Path.of(s.substring(5));
+            else if(s.startsWith("-")) System.err.printf("Unknown argument \"%s\"\n", s);
+            else files.add(s);
+        }
+        if(out != null && files.size() != 1) throw new IllegalArgumentException("-out only works for a single input file");
+
+        for (String file : files) {
+            Puzzle p = new Puzzle();
+            p.readInput(file);
+            var enumerator = SolverFactory.enumerator(p.dimensionX, p.dimensionY, p.dimensionZ, p.cubes, threads);
+
+            long start = System.currentTimeMillis();
+            long count;
+            if(out != null) count = enumerator.enumerate(out, collapseSymmetric);
+            else if(logging) count = enumerator.countWithLogging(collapseSymmetric);
+            else count = enumerator.count(collapseSymmetric);
+            System.out.printf("%s: %d solutions in %d ms\n", file, count, System.currentTimeMillis() - start);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import abstractions.PuzzleNotSolvableException;
 import abstractions.cube.CubeType;
 import abstractions.cube.ICube;
 import abstractions.cube.Triangle;
+import implementation.cube.CubeMask;
 import implementation.cube.sorter.ArrayCubeSorter;
 import implementation.cube.sorter.CubeSorterFactory;
 import implementation.solution.DynamicPuzzleSolution;
@@ -27,7 +28,7 @@ public class TreeBuilder  {
 
     /* Immutable references, but inner state is mutable */
     private final DynamicPuzzleSolution solution;
-    private final boolean[] usedIDs;
+    private final long[] usedMask;
 
     /* Mutable */
     private TreeNode node;
@@ -40,7 +41,7 @@ public class TreeBuilder  {
         this.solution = new DynamicPuzzleSolution(dimensionX, dimensionY, dimensionZ);
         this.coords = generator.generate();
         this.sorter = new ArrayCubeSorter[dimensionX * dimensionY * dimensionZ];
-        this.usedIDs = new boolean[dimensionX * dimensionY * dimensionZ + 1];
+        this.usedMask = CubeMask.create(dimensionX * dimensionY * dimensionZ);
         this.root = new TreeNode();
         this.node = this.root;
         this.types = new CubeType[dimensionX * dimensionY * dimensionZ];
@@ -78,7 +79,7 @@ public class TreeBuilder  {
                     int[] comp = new int[4]; // Maps the triangle a cube has on side "side" to the amount of potential next candidates
                     for (int i = 0; i < 4; i++) {
                         filter.setSide(opposite, Triangle.valueOf(i+1).getMatching(isVertical));
-                        comp[i] = sort.count(filter);
+                        comp[i] = sort.countCubes(filter, this.usedMask);
                     }
 
                     Arrays.sort(cubes, (cube1, cube2) -> {
@@ -131,7 +132,7 @@ public class TreeBuilder  {
     public void expandCurrentNode() {
         if(this.node.isBeingPopulated()) {
             int childHeight = this.node.getHeight() + 1;
-            ICube[] cubes = this.sorter[childHeight].matching(this.solution.getFilterAt(this.coords[childHeight]), this::isFree);
+            ICube[] cubes = this.sorter[childHeight].matching(this.solution.getFilterAt(this.coords[childHeight]), this.usedMask);
 
             if(childHeight + 1 < this.coords.length && cubes.length > 3) { // Lookahead to sort child notes
                 ICube.Side side = this.coords[childHeight + 1].adjacentTo(this.coords[childHeight]); // Side of "childHeight" that looks at "childHeight + 1"
@@ -143,7 +144,7 @@ public class TreeBuilder  {
                     int[] comp = new int[4]; // Maps the triangle a cube has on side "side" to the amount of potential next candidates
                     for (int i = 0; i < 4; i++) {
                         filter.setSide(opposite, Triangle.valueOf(i+1).getMatching(isVertical));
-                        comp[i] = sort.count(filter);
+                        comp[i] = sort.countCubes(filter, this.usedMask);
                     }
 
                     Arrays.sort(cubes, (cube1, cube2) -> {
@@ -178,7 +179,7 @@ public class TreeBuilder  {
             this.node = nextNode;
             ICube tmp = this.solution.set(this.coords[this.node.getHeight()], this.node.getCube());
             if(tmp != null) throw new IllegalStateException();
-            this.usedIDs[this.node.getCube().getIdentifier()] = true;
+            CubeMask.set(this.usedMask, this.node.getCube().getIdentifier());
             this.sets++;
         }
     }
@@ -187,19 +188,15 @@ public class TreeBuilder  {
         // Undoes the operation in the solution object and freeing the id of the used cube
         int id = this.solution.undo();
         if(id == -1) throw new PuzzleNotSolvableException();
-        if (id > 0 && !this.usedIDs[id]) {
+        if (id > 0 && !CubeMask.isSet(this.usedMask, id)) {
             throw new IllegalStateException("Trying to free ID " + id + " which wasn't used!");
         }
-        this.usedIDs[id] = false; // Skipping 0 check since id=0 isn't used anyway
+        CubeMask.clear(this.usedMask, id); // Skipping 0 check since id=0 isn't used anyway
         this.node.validate();
         this.node = this.node.getParent();
         this.undos++;
     }
 
-    private boolean isFree(Integer cube) {
-        return !this.usedIDs[cube];
-    }
-
     /**
      * Each node has exactly one parent and n children, that are populated on demand later. Only one thread may ever populate the same node at the same time.
      */
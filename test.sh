@@ -13,6 +13,18 @@ for i in `ls input_files`; do
 	fi
 done
 
+echo "---"
+echo "Regressionstests"
+## kept out of md2021.jar, so they are compiled against it here
+rm -rf test_classes
+mkdir test_classes
+javac -cp md2021.jar -d test_classes test/implementation/solver/RegressionChecks.java && java -cp md2021.jar:test_classes implementation.solver.RegressionChecks
+if test $? -ne 0 ; then
+	echo "Test fehlgeschlagen"
+	FAIL="1"
+fi
+rm -rf test_classes
+
 if test -n "$FAIL" ; then
 	echo "Bei der Gesamtprüfung trat mindestens 1 Fehler auf"
 	exit 1
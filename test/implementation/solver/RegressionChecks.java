@@ -0,0 +1,89 @@
+package implementation.solver;
+
+import abstractions.PuzzleNotSolvableException;
+import abstractions.cube.ICube;
+import abstractions.cube.Triangle;
+import implementation.Puzzle;
+import implementation.cube.CachedCube;
+
+/**
+ * Checks for bugs that have been fixed in the solvers, so they don't come back. Run by test.sh against md2021.jar, but not part
+ * of it. Lives in the solver package to reach its package private parts. Each check throws an IllegalStateException if it fails.
+ * Has to run in the project folder, like the other tools.
+ */
+public class RegressionChecks {
+    public static void main(String[] args) throws PuzzleNotSolvableException {
+        checkBannedCubeKeepsDeadStatesApart();
+        checkGeometricBudgetsGrow();
+        checkDancingLinksEnumeratesAgain();
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Two equal corner cubes, one of which is banned from some corners: Setting one or the other on the same position has to give
+     * different dead states while the banned one is free, but the same as without the ban once it is set.
+     */
+    private static void checkBannedCubeKeepsDeadStatesApart() {
+        ICube banned = new CachedCube(1, Triangle.None, Triangle.None, Triangle.BottomLeft, Triangle.TopRight, Triangle.None, Triangle.BottomRight);
+        ICube equal = new CachedCube(2, Triangle.None, Triangle.None, Triangle.BottomLeft, Triangle.TopRight, Triangle.None, Triangle.BottomRight);
+        if(banned.getUniqueCubeId() != equal.getUniqueCubeId()) throw new IllegalStateException("Test cubes aren't equal");
+
+        FrontierHash plain = new FrontierHash(3, 2, 2);
+        plain.set(0, 0, 0, banned);
+        long bannedSetPlain = plain.get();
+        plain.unset(0, 0, 0, banned);
+        plain.set(0, 0, 0, equal);
+        if(plain.get() != bannedSetPlain) throw new IllegalStateException("Equal cubes give different states without a ban");
+
+        FrontierHash withBan = new FrontierHash(3, 2, 2);
+        withBan.ban(banned.getIdentifier());
+        withBan.set(0, 0, 0, banned);
+        long bannedSet = withBan.get();
+        withBan.unset(0, 0, 0, banned);
+        withBan.set(0, 0, 0, equal);
+        if(withBan.get() == bannedSet) throw new IllegalStateException("Dead state of the banned cube is shared with an equal cube");
+        if(bannedSet != bannedSetPlain) throw new IllegalStateException("Ban changes the state although the banned cube is set");
+    }
+
+    /**
+     * A geometric schedule has to exceed any fixed budget eventually, so it can't be created with a factor of 1 or less.
+     */
+    private static void checkGeometricBudgetsGrow() {
+        for (double factor : new double[]{1, 0.5, Double.NaN}) {
+            try {
+                RestartPolicy.geometric(1, factor);
+                throw new IllegalStateException("Geometric schedule accepted factor " + factor);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be
+            }
+        }
+
+        for (double factor : new double[]{1.0001, 1.5, 2}) {
+            RestartPolicy policy = RestartPolicy.geometric(1, factor);
+            for (long fixed : new long[]{1, 1 << 20, Long.MAX_VALUE / 2}) {
+                int run = 0;
+                while(policy.budget(run) <= fixed) {
+                    if(++run == 1 << 20) throw new IllegalStateException(policy + " never exceeds " + fixed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dancing Links has to start over on each enumeration, even if an earlier search stopped halfway at a solution.
+     */
+    private static void checkDancingLinksEnumeratesAgain() throws PuzzleNotSolvableException {
+        Puzzle p = new Puzzle();
+        p.readInput("input_files/ihk_beispiel3.txt");
+        DancingLinksSolver solver = new DancingLinksSolver(p.dimensionX, p.dimensionY, p.dimensionZ, p.cubes);
+
+        long first = solver.enumerate(solution -> {});
+        long second = solver.enumerate(solution -> {});
+        if(first == 0 || second != first) throw new IllegalStateException("Enumerated " + first + " solutions, then " + second);
+
+        solver.prepare();
+        solver.solve();
+        long afterSolve = solver.enumerate(solution -> {});
+        if(afterSolve != first) throw new IllegalStateException("Enumerated " + first + " solutions, but " + afterSolve + " after solve()");
+    }
+}